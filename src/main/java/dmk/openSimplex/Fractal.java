@@ -0,0 +1,237 @@
+package dmk.openSimplex;
+
+/**
+ * Fractal (fBm-style) sum of OpenSimplex2 noise2 octaves with every constant, and the seed's
+ * gradient tables, worked out up front.
+ * Input coordinates are divided by the wavelength, then octave i samples at multipliers[i] times
+ * that position and contributes with weights[i]. The sum is normalised by the total weight and
+ * clamped to [-1, 1], the same shape as TerrainGenerator.getNoise and GeneratorClouds.getMap.
+ * Instances are immutable and safe to share between threads.
+ *
+ * Evaluation can be given the distance between neighbouring samples. Octaves whose features
+ * are too fine to survive at that spacing are faded out and then skipped entirely, so
+ * zoomed-out renders cost less and alias less. The normaliser stays the same either way,
+ * which keeps the overall range of the sum unchanged. A spacing of 0 evaluates every octave.
+ */
+public class Fractal {
+    // an octave is dropped once one noise unit spans NYQUIST samples or fewer,
+    // and fades in linearly until it spans FULL_DETAIL samples
+    private static final double NYQUIST = 2;
+    private static final double FULL_DETAIL = 4;
+
+    private final OpenSimplex2.Sampler sampler;
+    private final double wavelength;
+    private final double[] multipliers;
+    private final double[] weights;
+    private final double weightSum;
+    private final double[] periods;
+
+    public Fractal(long seed, double wavelength, double[] multipliers, double[] weights) {
+        if (multipliers.length != weights.length)
+            throw new IllegalArgumentException("need one weight per octave");
+
+        this.sampler = new OpenSimplex2.Sampler(seed);
+        this.wavelength = wavelength;
+        this.multipliers = multipliers.clone();
+        this.weights = weights.clone();
+
+        double sum = 0;
+        for (double weight : weights) {
+            sum += weight;
+        }
+        this.weightSum = sum;
+
+        this.periods = new double[multipliers.length];
+        for (int i = 0; i < multipliers.length; i++) {
+            periods[i] = wavelength / multipliers[i];
+        }
+    }
+
+    /**
+     * Octave i at lacunarity^i times the base frequency, weighted by weights[i].
+     */
+    public static Fractal geometric(long seed, double wavelength, int octaves, double lacunarity, double[] weights) {
+        double[] multipliers = new double[octaves];
+        for (int i = 0; i < octaves; i++) {
+            multipliers[i] = Math.pow(lacunarity, i);
+        }
+        return new Fractal(seed, wavelength, multipliers, weights);
+    }
+
+    /**
+     * 1/(i+1) for each octave, the weighting TerrainGenerator uses.
+     */
+    public static double[] harmonicWeights(int octaves) {
+        double[] weights = new double[octaves];
+        for (int i = 0; i < octaves; i++) {
+            weights[i] = 1 / (double)(i + 1);
+        }
+        return weights;
+    }
+
+    /**
+     * 1/multiplier for each octave, the weighting GeneratorClouds uses.
+     */
+    public static double[] inverseWeights(double[] multipliers) {
+        double[] weights = new double[multipliers.length];
+        for (int i = 0; i < multipliers.length; i++) {
+            weights[i] = 1 / multipliers[i];
+        }
+        return weights;
+    }
+
+    public int getOctaves() {
+        return multipliers.length;
+    }
+
+    /**
+     * How many octaves contribute at the given sample spacing.
+     */
+    public int getOctaves(double spacing) {
+        int octaves = 0;
+        for (int i = 0; i < multipliers.length; i++) {
+            if (attenuation(i, spacing) > 0)
+                octaves++;
+        }
+        return octaves;
+    }
+
+    /**
+     * Period of the given octave in input units, wavelength / multiplier.
+     */
+    public double getPeriod(int octave) {
+        return periods[octave];
+    }
+
+    /**
+     * Share of the normalised sum the given octave contributes at this sample spacing.
+     */
+    public double getAmplitude(int octave, double spacing) {
+        return weights[octave] * attenuation(octave, spacing) / weightSum;
+    }
+
+    /**
+     * Fractal noise at one point.
+     */
+    public double noise(double x, double y) {
+        return noise(x, y, 0);
+    }
+
+    /**
+     * Fractal noise at one point, band-limited to samples taken spacing apart.
+     */
+    public double noise(double x, double y, double spacing) {
+        double nx = x / wavelength;
+        double ny = y / wavelength;
+
+        double cumulative = 0;
+        for (int i = 0; i < multipliers.length; i++) {
+            final double attenuation = attenuation(i, spacing);
+            if (attenuation <= 0)
+                continue;
+            cumulative += sampler.noise2(multipliers[i] * nx, multipliers[i] * ny) * (weights[i] * attenuation);
+        }
+
+        return Math.max(-1, Math.min(1, cumulative / weightSum));
+    }
+
+    /**
+     * Fractal noise at one point, also writing its partial derivatives with respect to the
+     * input coordinates to gradient[0] and gradient[1]. The value matches noise(x, y, spacing);
+     * where the sum is clamped the gradient is zero.
+     */
+    public double noise(double x, double y, double spacing, double[] gradient) {
+        return noise(x, y, spacing, gradient, new float[2]);
+    }
+
+    /**
+     * Gradient variant that reuses the caller's scratch buffer, which must hold 2 floats.
+     */
+    public double noise(double x, double y, double spacing, double[] gradient, float[] octave) {
+        double nx = x / wavelength;
+        double ny = y / wavelength;
+
+        double cumulative = 0;
+        double dx = 0, dy = 0;
+        for (int i = 0; i < multipliers.length; i++) {
+            final double attenuation = attenuation(i, spacing);
+            if (attenuation <= 0)
+                continue;
+            final double weight = weights[i] * attenuation;
+            cumulative += sampler.noise2_Gradient(multipliers[i] * nx, multipliers[i] * ny, octave) * weight;
+
+            // chain rule through multipliers[i] * x / wavelength
+            final double chain = weight * multipliers[i] / wavelength;
+            dx += octave[0] * chain;
+            dy += octave[1] * chain;
+        }
+
+        final double value = cumulative / weightSum;
+        if (value < -1 || value > 1) {
+            gradient[0] = 0;
+            gradient[1] = 0;
+            return Math.max(-1, Math.min(1, value));
+        }
+
+        gradient[0] = dx / weightSum;
+        gradient[1] = dy / weightSum;
+        return value;
+    }
+
+    /**
+     * Fractal noise over the grid of x by y: sample (i, j) at (x[i], y[j]), band-limited to the given
+     * spacing, written to out[offset + j * x.length + i]. Each octave goes through the row evaluator and
+     * is summed in the same order as noise(x, y, spacing), so results are bit-identical to the point version.
+     */
+    public void noise(double[] x, double[] y, double spacing, double[] out, int offset) {
+        final int width = x.length;
+        final int count = width * y.length;
+        final double[] nx = new double[width];
+        final double[] octaveX = new double[width];
+        final float[] row = new float[width];
+        for (int i = 0; i < width; i++) {
+            nx[i] = x[i] / wavelength;
+        }
+
+        for (int k = 0; k < count; k++) {
+            out[offset + k] = 0;
+        }
+
+        for (int i = 0; i < multipliers.length; i++) {
+            final double attenuation = attenuation(i, spacing);
+            if (attenuation <= 0)
+                continue;
+
+            final double multiplier = multipliers[i];
+            final double weight = weights[i] * attenuation;
+            for (int c = 0; c < width; c++) {
+                octaveX[c] = multiplier * nx[c];
+            }
+            for (int j = 0, k = offset; j < y.length; j++) {
+                sampler.noise2_Row(octaveX, multiplier * (y[j] / wavelength), width, row, 0);
+                for (int c = 0; c < width; c++, k++) {
+                    out[k] += row[c] * weight;
+                }
+            }
+        }
+
+        for (int k = 0; k < count; k++) {
+            out[offset + k] = Math.max(-1, Math.min(1, out[offset + k] / weightSum));
+        }
+    }
+
+    /**
+     * 1 while octave i is comfortably resolved at this spacing, 0 once it would alias.
+     */
+    private double attenuation(int i, double spacing) {
+        if (spacing <= 0)
+            return 1;
+
+        final double samples = periods[i] / spacing;
+        if (samples >= FULL_DETAIL)
+            return 1;
+        if (samples <= NYQUIST)
+            return 0;
+        return (samples - NYQUIST) / (FULL_DETAIL - NYQUIST);
+    }
+}
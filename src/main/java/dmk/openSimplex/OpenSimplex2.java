@@ -5,39 +5,39 @@ package dmk.openSimplex;
 
 public class OpenSimplex2 {
 
-    private static final long PRIME_X = 0x5205402B9270C86FL;
-    private static final long PRIME_Y = 0x598CD327003817B5L;
-    private static final long PRIME_Z = 0x5BCC226E9FA0BACBL;
+    static final long PRIME_X = 0x5205402B9270C86FL;
+    static final long PRIME_Y = 0x598CD327003817B5L;
+    static final long PRIME_Z = 0x5BCC226E9FA0BACBL;
     private static final long PRIME_W = 0x56CC5227E58F554BL;
-    private static final long HASH_MULTIPLIER = 0x53A3F72DEEC546F5L;
-    private static final long SEED_FLIP_3D = -0x52D547B2E96ED629L;
+    static final long HASH_MULTIPLIER = 0x53A3F72DEEC546F5L;
+    static final long SEED_FLIP_3D = -0x52D547B2E96ED629L;
     private static final long SEED_OFFSET_4D = 0xE83DC3E0DA7164DL;
 
     private static final double ROOT2OVER2 = 0.7071067811865476;
-    private static final double SKEW_2D = 0.366025403784439;
-    private static final double UNSKEW_2D = -0.21132486540518713;
+    static final double SKEW_2D = 0.366025403784439;
+    static final double UNSKEW_2D = -0.21132486540518713;
 
-    private static final double ROOT3OVER3 = 0.577350269189626;
+    static final double ROOT3OVER3 = 0.577350269189626;
     private static final double FALLBACK_ROTATE_3D = 2.0 / 3.0;
-    private static final double ROTATE_3D_ORTHOGONALIZER = UNSKEW_2D;
+    static final double ROTATE_3D_ORTHOGONALIZER = UNSKEW_2D;
 
     private static final float SKEW_4D = -0.138196601125011f;
     private static final float UNSKEW_4D = 0.309016994374947f;
     private static final float LATTICE_STEP_4D = 0.2f;
 
-    private static final int N_GRADS_2D_EXPONENT = 7;
-    private static final int N_GRADS_3D_EXPONENT = 8;
+    static final int N_GRADS_2D_EXPONENT = 7;
+    static final int N_GRADS_3D_EXPONENT = 8;
     private static final int N_GRADS_4D_EXPONENT = 9;
-    private static final int N_GRADS_2D = 1 << N_GRADS_2D_EXPONENT;
-    private static final int N_GRADS_3D = 1 << N_GRADS_3D_EXPONENT;
+    static final int N_GRADS_2D = 1 << N_GRADS_2D_EXPONENT;
+    static final int N_GRADS_3D = 1 << N_GRADS_3D_EXPONENT;
     private static final int N_GRADS_4D = 1 << N_GRADS_4D_EXPONENT;
 
     private static final double NORMALIZER_2D = 0.01001634121365712;
     private static final double NORMALIZER_3D = 0.07969837668935331;
     private static final double NORMALIZER_4D = 0.0220065933241897;
 
-    private static final float RSQUARED_2D = 0.5f;
-    private static final float RSQUARED_3D = 0.6f;
+    static final float RSQUARED_2D = 0.5f;
+    static final float RSQUARED_3D = 0.6f;
     private static final float RSQUARED_4D = 0.6f;
 
 
@@ -439,6 +439,1136 @@ public class OpenSimplex2 {
         return value;
     }
 
+    /*
+     * Bulk Evaluators
+     */
+
+    /**
+     * 2D Simplex noise, standard lattice orientation, evaluated over a regular grid.
+     * Sample (i, j) is taken at (x0 + i * xStep, y0 + j * yStep) and written to out[offset + j * width + i].
+     * Neighbouring samples usually share a lattice cell, so gradient hashes are reused along each row.
+     * Results are bit-identical to calling noise2 once per point with the same coordinates.
+     */
+    public static void noise2(long seed, double x0, double y0, double xStep, double yStep,
+            int width, int height, float[] out, int offset) {
+        double[] x = columns(x0, xStep, width);
+        for (int j = 0; j < height; j++) {
+            noise2_Row(seed, x, y0 + j * yStep, width, out, offset + j * width);
+        }
+    }
+
+    /**
+     * 2D Simplex noise, standard lattice orientation, evaluated over a regular grid into a double[].
+     * See the float[] variant for the layout.
+     */
+    public static void noise2(long seed, double x0, double y0, double xStep, double yStep,
+            int width, int height, double[] out, int offset) {
+        noise2(seed, x0, y0, xStep, yStep, width, height, out, offset, new float[width]);
+    }
+
+    /**
+     * double[] grid variant that reuses the caller's scratch row, which must hold width floats.
+     */
+    public static void noise2(long seed, double x0, double y0, double xStep, double yStep,
+            int width, int height, double[] out, int offset, float[] row) {
+        double[] x = columns(x0, xStep, width);
+        for (int j = 0; j < height; j++) {
+            noise2_Row(seed, x, y0 + j * yStep, width, row, 0);
+            for (int i = 0, k = offset + j * width; i < width; i++, k++) {
+                out[k] = row[i];
+            }
+        }
+    }
+
+    /**
+     * 3D OpenSimplex2 noise, with better visual isotropy in (X, Y), evaluated over a regular XY grid.
+     * Sample (i, j) is taken at (x0 + i * xStep, y0 + j * yStep, z[offset + j * width + i])
+     * and written to out[offset + j * width + i], so z can be a raster laid out like the output.
+     * Results are bit-identical to calling noise3_ImproveXY once per point with the same coordinates.
+     */
+    public static void noise3_ImproveXY(long seed, double x0, double y0, double xStep, double yStep, double[] z,
+            int width, int height, float[] out, int offset) {
+        int[] gi = new int[8];
+        for (int j = 0; j < height; j++) {
+            noise3_ImproveXYRow(seed, x0, xStep, y0 + j * yStep, z, offset + j * width, width, gi, out, offset + j * width);
+        }
+    }
+
+    /**
+     * 3D OpenSimplex2 noise, with better visual isotropy in (X, Y), evaluated over a regular XY grid
+     * into a double[]. See the float[] variant for the layout.
+     */
+    public static void noise3_ImproveXY(long seed, double x0, double y0, double xStep, double yStep, double[] z,
+            int width, int height, double[] out, int offset) {
+        noise3_ImproveXY(seed, x0, y0, xStep, yStep, z, width, height, out, offset, new float[width]);
+    }
+
+    /**
+     * double[] grid variant that reuses the caller's scratch row, which must hold width floats.
+     */
+    public static void noise3_ImproveXY(long seed, double x0, double y0, double xStep, double yStep, double[] z,
+            int width, int height, double[] out, int offset, float[] row) {
+        int[] gi = new int[8];
+        for (int j = 0; j < height; j++) {
+            noise3_ImproveXYRow(seed, x0, xStep, y0 + j * yStep, z, offset + j * width, width, gi, row, 0);
+            for (int i = 0, k = offset + j * width; i < width; i++, k++) {
+                out[k] = row[i];
+            }
+        }
+    }
+
+    /**
+     * 2D Simplex noise, standard lattice orientation, along one row: sample i is taken at (x[i], y)
+     * and written to out[offset + i]. x should run in small increasing steps, as along a row of pixels,
+     * so that neighbouring samples share a lattice cell; gradient indices are cached per cell and only
+     * rehashed once the row crosses into a new one.
+     * Results are bit-identical to calling noise2 once per point with the same coordinates.
+     */
+    public static void noise2_Row(long seed, double[] x, double y, int width, float[] out, int offset) {
+        int cellX = 0, cellY = 0;
+        long xsbp = 0, ysbp = 0;
+        int gi0 = 0, gi1 = 0, gi2 = 0, gi3 = 0;
+        int known = 0; // bit per cached vertex; 0 forces a rehash on the first sample
+
+        for (int i = 0; i < width; i++) {
+
+            // Same arithmetic as noise2 and noise2_UnskewedBase, so results stay bit-identical.
+            double s = SKEW_2D * (x[i] + y);
+            double xs = x[i] + s, ys = y + s;
+            int xsb = fastFloor(xs), ysb = fastFloor(ys);
+            float xi = (float)(xs - xsb), yi = (float)(ys - ysb);
+
+            if (known == 0 || xsb != cellX || ysb != cellY) {
+                cellX = xsb;
+                cellY = ysb;
+                xsbp = xsb * PRIME_X;
+                ysbp = ysb * PRIME_Y;
+                known = 0x10;
+            }
+
+            float t = (xi + yi) * (float)UNSKEW_2D;
+            float dx0 = xi + t, dy0 = yi + t;
+
+            float value = 0;
+            float a0 = RSQUARED_2D - dx0 * dx0 - dy0 * dy0;
+            if (a0 > 0) {
+                if ((known & 1) == 0) { gi0 = gradIndex(seed, xsbp, ysbp); known |= 1; }
+                value = (a0 * a0) * (a0 * a0) * (GRADIENTS_2D[gi0 | 0] * dx0 + GRADIENTS_2D[gi0 | 1] * dy0);
+            }
+
+            float a1 = (float)(2 * (1 + 2 * UNSKEW_2D) * (1 / UNSKEW_2D + 2)) * t + ((float)(-2 * (1 + 2 * UNSKEW_2D) * (1 + 2 * UNSKEW_2D)) + a0);
+            if (a1 > 0) {
+                float dx1 = dx0 - (float)(1 + 2 * UNSKEW_2D);
+                float dy1 = dy0 - (float)(1 + 2 * UNSKEW_2D);
+                if ((known & 2) == 0) { gi1 = gradIndex(seed, xsbp + PRIME_X, ysbp + PRIME_Y); known |= 2; }
+                value += (a1 * a1) * (a1 * a1) * (GRADIENTS_2D[gi1 | 0] * dx1 + GRADIENTS_2D[gi1 | 1] * dy1);
+            }
+
+            if (dy0 > dx0) {
+                float dx2 = dx0 - (float)UNSKEW_2D;
+                float dy2 = dy0 - (float)(UNSKEW_2D + 1);
+                float a2 = RSQUARED_2D - dx2 * dx2 - dy2 * dy2;
+                if (a2 > 0) {
+                    if ((known & 4) == 0) { gi2 = gradIndex(seed, xsbp, ysbp + PRIME_Y); known |= 4; }
+                    value += (a2 * a2) * (a2 * a2) * (GRADIENTS_2D[gi2 | 0] * dx2 + GRADIENTS_2D[gi2 | 1] * dy2);
+                }
+            }
+            else
+            {
+                float dx2 = dx0 - (float)(UNSKEW_2D + 1);
+                float dy2 = dy0 - (float)UNSKEW_2D;
+                float a2 = RSQUARED_2D - dx2 * dx2 - dy2 * dy2;
+                if (a2 > 0) {
+                    if ((known & 8) == 0) { gi3 = gradIndex(seed, xsbp + PRIME_X, ysbp); known |= 8; }
+                    value += (a2 * a2) * (a2 * a2) * (GRADIENTS_2D[gi3 | 0] * dx2 + GRADIENTS_2D[gi3 | 1] * dy2);
+                }
+            }
+
+            out[offset + i] = value;
+        }
+    }
+
+    /**
+     * x0 + i * xStep for each of width columns, the same sum the per-point callers would make.
+     */
+    private static double[] columns(double x0, double xStep, int width) {
+        double[] x = new double[width];
+        for (int i = 0; i < width; i++) {
+            x[i] = x0 + i * xStep;
+        }
+        return x;
+    }
+
+    /**
+     * One row of noise3_ImproveXY samples. Both lattice copies keep their closest and
+     * second-closest gradient indices cached, in gi, until the rounded base point or
+     * the octant signs change. The caller allocates gi once for every row of a grid.
+     */
+    private static void noise3_ImproveXYRow(long seed, double x0, double xStep, double y, double[] z, int zOffset,
+            int width, int[] gi, float[] out, int offset) {
+        // gi holds, per lattice copy: closest, then second-closest along x, y, z
+        int cellX = 0, cellY = 0, cellZ = 0, cellSigns = 0;
+        int known = 0;
+
+        for (int i = 0; i < width; i++) {
+            double x = x0 + i * xStep;
+
+            // Same rotation as noise3_ImproveXY.
+            double xy = x + y;
+            double s2 = xy * ROTATE_3D_ORTHOGONALIZER;
+            double zz = z[zOffset + i] * ROOT3OVER3;
+            double xr = x + s2 + zz;
+            double yr = y + s2 + zz;
+            double zr = xy * -ROOT3OVER3 + zz;
+
+            // Same arithmetic as noise3_UnrotatedBase from here on.
+            int xrb = fastRound(xr), yrb = fastRound(yr), zrb = fastRound(zr);
+            float xri = (float)(xr - xrb), yri = (float)(yr - yrb), zri = (float)(zr - zrb);
+            int xNSign = (int)(-1.0f - xri) | 1, yNSign = (int)(-1.0f - yri) | 1, zNSign = (int)(-1.0f - zri) | 1;
+            float ax0 = xNSign * -xri, ay0 = yNSign * -yri, az0 = zNSign * -zri;
+
+            int signs = ((xNSign >>> 31) << 2) | ((yNSign >>> 31) << 1) | (zNSign >>> 31);
+            if (known == 0 || xrb != cellX || yrb != cellY || zrb != cellZ || signs != cellSigns) {
+                cellX = xrb;
+                cellY = yrb;
+                cellZ = zrb;
+                cellSigns = signs;
+                known = 0x100;
+            }
+
+            long xrbp = xrb * PRIME_X, yrbp = yrb * PRIME_Y, zrbp = zrb * PRIME_Z;
+            long latticeSeed = seed;
+
+            float value = 0;
+            float a = (RSQUARED_3D - xri * xri) - (yri * yri + zri * zri);
+            for (int l = 0, slot = 0; ; l++, slot += 4) {
+
+                if (a > 0) {
+                    if ((known & (1 << slot)) == 0) {
+                        gi[slot] = gradIndex(latticeSeed, xrbp, yrbp, zrbp);
+                        known |= 1 << slot;
+                    }
+                    int g = gi[slot];
+                    value += (a * a) * (a * a) * (GRADIENTS_3D[g | 0] * xri + GRADIENTS_3D[g | 1] * yri + GRADIENTS_3D[g | 2] * zri);
+                }
+
+                if (ax0 >= ay0 && ax0 >= az0) {
+                    float b = a + ax0 + ax0;
+                    if (b > 1) {
+                        b -= 1;
+                        if ((known & (2 << slot)) == 0) {
+                            gi[slot + 1] = gradIndex(latticeSeed, xrbp - xNSign * PRIME_X, yrbp, zrbp);
+                            known |= 2 << slot;
+                        }
+                        int g = gi[slot + 1];
+                        value += (b * b) * (b * b) * (GRADIENTS_3D[g | 0] * (xri + xNSign) + GRADIENTS_3D[g | 1] * yri + GRADIENTS_3D[g | 2] * zri);
+                    }
+                }
+                else if (ay0 > ax0 && ay0 >= az0) {
+                    float b = a + ay0 + ay0;
+                    if (b > 1) {
+                        b -= 1;
+                        if ((known & (4 << slot)) == 0) {
+                            gi[slot + 2] = gradIndex(latticeSeed, xrbp, yrbp - yNSign * PRIME_Y, zrbp);
+                            known |= 4 << slot;
+                        }
+                        int g = gi[slot + 2];
+                        value += (b * b) * (b * b) * (GRADIENTS_3D[g | 0] * xri + GRADIENTS_3D[g | 1] * (yri + yNSign) + GRADIENTS_3D[g | 2] * zri);
+                    }
+                }
+                else
+                {
+                    float b = a + az0 + az0;
+                    if (b > 1) {
+                        b -= 1;
+                        if ((known & (8 << slot)) == 0) {
+                            gi[slot + 3] = gradIndex(latticeSeed, xrbp, yrbp, zrbp - zNSign * PRIME_Z);
+                            known |= 8 << slot;
+                        }
+                        int g = gi[slot + 3];
+                        value += (b * b) * (b * b) * (GRADIENTS_3D[g | 0] * xri + GRADIENTS_3D[g | 1] * yri + GRADIENTS_3D[g | 2] * (zri + zNSign));
+                    }
+                }
+
+                if (l == 1) break;
+
+                ax0 = 0.5f - ax0;
+                ay0 = 0.5f - ay0;
+                az0 = 0.5f - az0;
+
+                xri = xNSign * ax0;
+                yri = yNSign * ay0;
+                zri = zNSign * az0;
+
+                a += (0.75f - ax0) - (ay0 + az0);
+
+                xrbp += (xNSign >> 1) & PRIME_X;
+                yrbp += (yNSign >> 1) & PRIME_Y;
+                zrbp += (zNSign >> 1) & PRIME_Z;
+
+                xNSign = -xNSign;
+                yNSign = -yNSign;
+                zNSign = -zNSign;
+
+                latticeSeed ^= SEED_FLIP_3D;
+            }
+
+            out[offset + i] = value;
+        }
+    }
+
+    /*
+     * Multi-seed Evaluators
+     */
+
+    /**
+     * 2D Simplex noise, standard lattice orientation, for several seeds at one point.
+     * The skew, lattice floor and falloffs are computed once; only the gradient hashes differ per seed.
+     * out[k] receives the result for seeds[k], bit-identical to noise2(seeds[k], x, y).
+     */
+    public static void noise2(long[] seeds, double x, double y, float[] out) {
+        double s = SKEW_2D * (x + y);
+        double xs = x + s, ys = y + s;
+
+        noise2_UnskewedBase(seeds, xs, ys, out, 0, 1);
+    }
+
+    /**
+     * 3D OpenSimplex2 noise, with better visual isotropy in (X, Y), for several seeds at one point.
+     * The rotation and both lattice walks are done once; only the gradient hashes differ per seed.
+     * out[k] receives the result for seeds[k], bit-identical to noise3_ImproveXY(seeds[k], x, y, z).
+     */
+    public static void noise3_ImproveXY(long[] seeds, double x, double y, double z, float[] out) {
+        double xy = x + y;
+        double s2 = xy * ROTATE_3D_ORTHOGONALIZER;
+        double zz = z * ROOT3OVER3;
+        double xr = x + s2 + zz;
+        double yr = y + s2 + zz;
+        double zr = xy * -ROOT3OVER3 + zz;
+
+        noise3_UnrotatedBase(seeds, xr, yr, zr, out, 0, 1);
+    }
+
+    /**
+     * 3D OpenSimplex2 noise, with better visual isotropy in (X, Y), for several seeds over a regular XY grid.
+     * Sampling follows the single-seed grid variant. out holds one width * height plane per seed,
+     * so the result for seeds[k] at (i, j) is out[offset + k * width * height + j * width + i].
+     */
+    public static void noise3_ImproveXY(long[] seeds, double x0, double y0, double xStep, double yStep, double[] z,
+            int width, int height, float[] out, int offset) {
+        final int plane = width * height;
+        for (int j = 0; j < height; j++) {
+            double y = y0 + j * yStep;
+            for (int i = 0, k = j * width; i < width; i++, k++) {
+                double x = x0 + i * xStep;
+                double xy = x + y;
+                double s2 = xy * ROTATE_3D_ORTHOGONALIZER;
+                double zz = z[offset + k] * ROOT3OVER3;
+                double xr = x + s2 + zz;
+                double yr = y + s2 + zz;
+                double zr = xy * -ROOT3OVER3 + zz;
+
+                noise3_UnrotatedBase(seeds, xr, yr, zr, out, offset + k, plane);
+            }
+        }
+    }
+
+    /**
+     * 3D OpenSimplex2 noise, with better visual isotropy in (X, Y), for several samplers at one point.
+     * The rotation, both lattice walks and the vertex hashes are done once; each sampler only looks up its gradients.
+     * out[k] receives the result for samplers[k], bit-identical to samplers[k].noise3_ImproveXY(x, y, z).
+     */
+    public static void noise3_ImproveXY(Sampler[] samplers, double x, double y, double z, float[] out) {
+        double xy = x + y;
+        double s2 = xy * ROTATE_3D_ORTHOGONALIZER;
+        double zz = z * ROOT3OVER3;
+        double xr = x + s2 + zz;
+        double yr = y + s2 + zz;
+        double zr = xy * -ROOT3OVER3 + zz;
+
+        for (int k = 0; k < samplers.length; k++) {
+            out[k] = 0;
+        }
+
+        int xrb = fastRound(xr), yrb = fastRound(yr), zrb = fastRound(zr);
+        float xri = (float)(xr - xrb), yri = (float)(yr - yrb), zri = (float)(zr - zrb);
+        int xNSign = (int)(-1.0f - xri) | 1, yNSign = (int)(-1.0f - yri) | 1, zNSign = (int)(-1.0f - zri) | 1;
+        float ax0 = xNSign * -xri, ay0 = yNSign * -yri, az0 = zNSign * -zri;
+        long xrbp = xrb * PRIME_X, yrbp = yrb * PRIME_Y, zrbp = zrb * PRIME_Z;
+
+        long copy = 0;
+        float a = (RSQUARED_3D - xri * xri) - (yri * yri + zri * zri);
+        for (int l = 0; ; l++) {
+
+            if (a > 0) {
+                float w = (a * a) * (a * a);
+                int slot = Sampler.index(copy, xrbp, yrbp, zrbp);
+                for (int k = 0; k < samplers.length; k++) {
+                    out[k] += w * Sampler.grad(samplers[k].gradients3D[slot], xri, yri, zri);
+                }
+            }
+
+            // The second-closest point only depends on the position, so every sampler takes the same branch.
+            float b;
+            long xp = xrbp, yp = yrbp, zp = zrbp;
+            float dx = xri, dy = yri, dz = zri;
+            if (ax0 >= ay0 && ax0 >= az0) {
+                b = a + ax0 + ax0;
+                xp -= xNSign * PRIME_X;
+                dx += xNSign;
+            }
+            else if (ay0 > ax0 && ay0 >= az0) {
+                b = a + ay0 + ay0;
+                yp -= yNSign * PRIME_Y;
+                dy += yNSign;
+            }
+            else
+            {
+                b = a + az0 + az0;
+                zp -= zNSign * PRIME_Z;
+                dz += zNSign;
+            }
+            if (b > 1) {
+                b -= 1;
+                float w = (b * b) * (b * b);
+                int slot = Sampler.index(copy, xp, yp, zp);
+                for (int k = 0; k < samplers.length; k++) {
+                    out[k] += w * Sampler.grad(samplers[k].gradients3D[slot], dx, dy, dz);
+                }
+            }
+
+            if (l == 1) break;
+
+            ax0 = 0.5f - ax0;
+            ay0 = 0.5f - ay0;
+            az0 = 0.5f - az0;
+
+            xri = xNSign * ax0;
+            yri = yNSign * ay0;
+            zri = zNSign * az0;
+
+            a += (0.75f - ax0) - (ay0 + az0);
+
+            xrbp += (xNSign >> 1) & PRIME_X;
+            yrbp += (yNSign >> 1) & PRIME_Y;
+            zrbp += (zNSign >> 1) & PRIME_Z;
+
+            xNSign = -xNSign;
+            yNSign = -yNSign;
+            zNSign = -zNSign;
+
+            copy = SEED_FLIP_3D;
+        }
+    }
+
+    /**
+     * Multi-seed counterpart of noise2_UnskewedBase.
+     * The result for seeds[k] is written to out[index + k * stride].
+     */
+    private static void noise2_UnskewedBase(long[] seeds, double xs, double ys, float[] out, int index, int stride) {
+        int xsb = fastFloor(xs), ysb = fastFloor(ys);
+        float xi = (float)(xs - xsb), yi = (float)(ys - ysb);
+        long xsbp = xsb * PRIME_X, ysbp = ysb * PRIME_Y;
+
+        float t = (xi + yi) * (float)UNSKEW_2D;
+        float dx0 = xi + t, dy0 = yi + t;
+
+        float a0 = RSQUARED_2D - dx0 * dx0 - dy0 * dy0;
+        float a1 = (float)(2 * (1 + 2 * UNSKEW_2D) * (1 / UNSKEW_2D + 2)) * t + ((float)(-2 * (1 + 2 * UNSKEW_2D) * (1 + 2 * UNSKEW_2D)) + a0);
+        float dx1 = dx0 - (float)(1 + 2 * UNSKEW_2D);
+        float dy1 = dy0 - (float)(1 + 2 * UNSKEW_2D);
+
+        // Third vertex, picked once for all seeds.
+        float dx2, dy2;
+        long xsbp2, ysbp2;
+        if (dy0 > dx0) {
+            dx2 = dx0 - (float)UNSKEW_2D;
+            dy2 = dy0 - (float)(UNSKEW_2D + 1);
+            xsbp2 = xsbp;
+            ysbp2 = ysbp + PRIME_Y;
+        }
+        else
+        {
+            dx2 = dx0 - (float)(UNSKEW_2D + 1);
+            dy2 = dy0 - (float)UNSKEW_2D;
+            xsbp2 = xsbp + PRIME_X;
+            ysbp2 = ysbp;
+        }
+        float a2 = RSQUARED_2D - dx2 * dx2 - dy2 * dy2;
+
+        for (int k = 0; k < seeds.length; k++) {
+            long seed = seeds[k];
+            float value = 0;
+            if (a0 > 0) {
+                value = (a0 * a0) * (a0 * a0) * grad(seed, xsbp, ysbp, dx0, dy0);
+            }
+            if (a1 > 0) {
+                value += (a1 * a1) * (a1 * a1) * grad(seed, xsbp + PRIME_X, ysbp + PRIME_Y, dx1, dy1);
+            }
+            if (a2 > 0) {
+                value += (a2 * a2) * (a2 * a2) * grad(seed, xsbp2, ysbp2, dx2, dy2);
+            }
+            out[index + k * stride] = value;
+        }
+    }
+
+    /**
+     * Multi-seed counterpart of noise3_UnrotatedBase.
+     * The result for seeds[k] is written to out[index + k * stride].
+     */
+    private static void noise3_UnrotatedBase(long[] seeds, double xr, double yr, double zr, float[] out, int index, int stride) {
+        for (int k = 0; k < seeds.length; k++) {
+            out[index + k * stride] = 0;
+        }
+
+        int xrb = fastRound(xr), yrb = fastRound(yr), zrb = fastRound(zr);
+        float xri = (float)(xr - xrb), yri = (float)(yr - yrb), zri = (float)(zr - zrb);
+        int xNSign = (int)(-1.0f - xri) | 1, yNSign = (int)(-1.0f - yri) | 1, zNSign = (int)(-1.0f - zri) | 1;
+        float ax0 = xNSign * -xri, ay0 = yNSign * -yri, az0 = zNSign * -zri;
+        long xrbp = xrb * PRIME_X, yrbp = yrb * PRIME_Y, zrbp = zrb * PRIME_Z;
+
+        long seedFlip = 0;
+        float a = (RSQUARED_3D - xri * xri) - (yri * yri + zri * zri);
+        for (int l = 0; ; l++) {
+
+            if (a > 0) {
+                float w = (a * a) * (a * a);
+                for (int k = 0; k < seeds.length; k++) {
+                    out[index + k * stride] += w * grad(seeds[k] ^ seedFlip, xrbp, yrbp, zrbp, xri, yri, zri);
+                }
+            }
+
+            // The second-closest point only depends on the position, so every seed takes the same branch.
+            float b;
+            long xp = xrbp, yp = yrbp, zp = zrbp;
+            float dx = xri, dy = yri, dz = zri;
+            if (ax0 >= ay0 && ax0 >= az0) {
+                b = a + ax0 + ax0;
+                xp -= xNSign * PRIME_X;
+                dx += xNSign;
+            }
+            else if (ay0 > ax0 && ay0 >= az0) {
+                b = a + ay0 + ay0;
+                yp -= yNSign * PRIME_Y;
+                dy += yNSign;
+            }
+            else
+            {
+                b = a + az0 + az0;
+                zp -= zNSign * PRIME_Z;
+                dz += zNSign;
+            }
+            if (b > 1) {
+                b -= 1;
+                float w = (b * b) * (b * b);
+                for (int k = 0; k < seeds.length; k++) {
+                    out[index + k * stride] += w * grad(seeds[k] ^ seedFlip, xp, yp, zp, dx, dy, dz);
+                }
+            }
+
+            if (l == 1) break;
+
+            ax0 = 0.5f - ax0;
+            ay0 = 0.5f - ay0;
+            az0 = 0.5f - az0;
+
+            xri = xNSign * ax0;
+            yri = yNSign * ay0;
+            zri = zNSign * az0;
+
+            a += (0.75f - ax0) - (ay0 + az0);
+
+            xrbp += (xNSign >> 1) & PRIME_X;
+            yrbp += (yNSign >> 1) & PRIME_Y;
+            zrbp += (zNSign >> 1) & PRIME_Z;
+
+            xNSign = -xNSign;
+            yNSign = -yNSign;
+            zNSign = -zNSign;
+
+            seedFlip = SEED_FLIP_3D;
+        }
+    }
+
+    /*
+     * Gradient Evaluators
+     */
+
+    /**
+     * 2D Simplex noise, standard lattice orientation, together with its partial derivatives.
+     * Returns the same value as noise2(seed, x, y) and writes d/dx, d/dy to gradient[0], gradient[1].
+     * The derivatives come from the same lattice walk, so they cost a fraction of a finite difference.
+     */
+    public static float noise2_Gradient(long seed, double x, double y, float[] gradient) {
+        double s = SKEW_2D * (x + y);
+        double xs = x + s, ys = y + s;
+
+        // The unskewed vertex offsets are plain differences in (x, y), so their derivatives need no transform.
+        gradient[0] = 0;
+        gradient[1] = 0;
+        return noise2_UnskewedBase(seed, xs, ys, gradient);
+    }
+
+    /**
+     * 3D OpenSimplex2 noise, with better visual isotropy in (X, Y), together with its partial derivatives.
+     * Returns the same value as noise3_ImproveXY(seed, x, y, z) and writes d/dx, d/dy, d/dz
+     * to gradient[0], gradient[1], gradient[2].
+     */
+    public static float noise3_ImproveXY_Gradient(long seed, double x, double y, double z, float[] gradient) {
+        double xy = x + y;
+        double s2 = xy * ROTATE_3D_ORTHOGONALIZER;
+        double zz = z * ROOT3OVER3;
+        double xr = x + s2 + zz;
+        double yr = y + s2 + zz;
+        double zr = xy * -ROOT3OVER3 + zz;
+
+        gradient[0] = 0;
+        gradient[1] = 0;
+        gradient[2] = 0;
+        float value = noise3_UnrotatedBase(seed, xr, yr, zr, gradient);
+
+        // Back through the rotation: the transpose of its Jacobian.
+        float dxr = gradient[0], dyr = gradient[1], dzr = gradient[2];
+        gradient[0] = (float)((1 + ROTATE_3D_ORTHOGONALIZER) * dxr + ROTATE_3D_ORTHOGONALIZER * dyr - ROOT3OVER3 * dzr);
+        gradient[1] = (float)(ROTATE_3D_ORTHOGONALIZER * dxr + (1 + ROTATE_3D_ORTHOGONALIZER) * dyr - ROOT3OVER3 * dzr);
+        gradient[2] = (float)(ROOT3OVER3 * (dxr + dyr + dzr));
+        return value;
+    }
+
+    /**
+     * 2D Simplex noise base, accumulating derivatives into gradient.
+     * The value is computed exactly as in the plain base so the two stay bit-identical.
+     */
+    private static float noise2_UnskewedBase(long seed, double xs, double ys, float[] gradient) {
+
+        // Get base points and offsets.
+        int xsb = fastFloor(xs), ysb = fastFloor(ys);
+        float xi = (float)(xs - xsb), yi = (float)(ys - ysb);
+
+        // Prime pre-multiplication for hash.
+        long xsbp = xsb * PRIME_X, ysbp = ysb * PRIME_Y;
+
+        // Unskew.
+        float t = (xi + yi) * (float)UNSKEW_2D;
+        float dx0 = xi + t, dy0 = yi + t;
+
+        // First vertex.
+        float value = 0;
+        float a0 = RSQUARED_2D - dx0 * dx0 - dy0 * dy0;
+        if (a0 > 0) {
+            value = contribution(a0, gradIndex(seed, xsbp, ysbp), dx0, dy0, gradient);
+        }
+
+        // Second vertex.
+        float a1 = (float)(2 * (1 + 2 * UNSKEW_2D) * (1 / UNSKEW_2D + 2)) * t + ((float)(-2 * (1 + 2 * UNSKEW_2D) * (1 + 2 * UNSKEW_2D)) + a0);
+        if (a1 > 0) {
+            float dx1 = dx0 - (float)(1 + 2 * UNSKEW_2D);
+            float dy1 = dy0 - (float)(1 + 2 * UNSKEW_2D);
+            value += contribution(a1, gradIndex(seed, xsbp + PRIME_X, ysbp + PRIME_Y), dx1, dy1, gradient);
+        }
+
+        // Third vertex.
+        if (dy0 > dx0) {
+            float dx2 = dx0 - (float)UNSKEW_2D;
+            float dy2 = dy0 - (float)(UNSKEW_2D + 1);
+            float a2 = RSQUARED_2D - dx2 * dx2 - dy2 * dy2;
+            if (a2 > 0) {
+                value += contribution(a2, gradIndex(seed, xsbp, ysbp + PRIME_Y), dx2, dy2, gradient);
+            }
+        }
+        else
+        {
+            float dx2 = dx0 - (float)(UNSKEW_2D + 1);
+            float dy2 = dy0 - (float)UNSKEW_2D;
+            float a2 = RSQUARED_2D - dx2 * dx2 - dy2 * dy2;
+            if (a2 > 0) {
+                value += contribution(a2, gradIndex(seed, xsbp + PRIME_X, ysbp), dx2, dy2, gradient);
+            }
+        }
+
+        return value;
+    }
+
+    /**
+     * Overlapping cubic lattices for 3D OpenSimplex2 noise, accumulating derivatives
+     * with respect to the rotated coordinates into gradient.
+     */
+    private static float noise3_UnrotatedBase(long seed, double xr, double yr, double zr, float[] gradient) {
+
+        // Get base points and offsets.
+        int xrb = fastRound(xr), yrb = fastRound(yr), zrb = fastRound(zr);
+        float xri = (float)(xr - xrb), yri = (float)(yr - yrb), zri = (float)(zr - zrb);
+
+        // -1 if positive, 1 if negative.
+        int xNSign = (int)(-1.0f - xri) | 1, yNSign = (int)(-1.0f - yri) | 1, zNSign = (int)(-1.0f - zri) | 1;
+
+        // Compute absolute values, using the above as a shortcut.
+        float ax0 = xNSign * -xri, ay0 = yNSign * -yri, az0 = zNSign * -zri;
+
+        // Prime pre-multiplication for hash.
+        long xrbp = xrb * PRIME_X, yrbp = yrb * PRIME_Y, zrbp = zrb * PRIME_Z;
+
+        // Loop: Pick an edge on each lattice copy.
+        float value = 0;
+        float a = (RSQUARED_3D - xri * xri) - (yri * yri + zri * zri);
+        for (int l = 0; ; l++) {
+
+            // Closest point on cube.
+            if (a > 0) {
+                value += contribution(a, gradIndex(seed, xrbp, yrbp, zrbp), xri, yri, zri, gradient);
+            }
+
+            // Second-closest point. Its falloff b is the usual r^2 - |d|^2 for the offset passed along.
+            if (ax0 >= ay0 && ax0 >= az0) {
+                float b = a + ax0 + ax0;
+                if (b > 1) {
+                    b -= 1;
+                    value += contribution(b, gradIndex(seed, xrbp - xNSign * PRIME_X, yrbp, zrbp), xri + xNSign, yri, zri, gradient);
+                }
+            }
+            else if (ay0 > ax0 && ay0 >= az0) {
+                float b = a + ay0 + ay0;
+                if (b > 1) {
+                    b -= 1;
+                    value += contribution(b, gradIndex(seed, xrbp, yrbp - yNSign * PRIME_Y, zrbp), xri, yri + yNSign, zri, gradient);
+                }
+            }
+            else
+            {
+                float b = a + az0 + az0;
+                if (b > 1) {
+                    b -= 1;
+                    value += contribution(b, gradIndex(seed, xrbp, yrbp, zrbp - zNSign * PRIME_Z), xri, yri, zri + zNSign, gradient);
+                }
+            }
+
+            // Break from loop if we're done, skipping updates below.
+            if (l == 1) break;
+
+            // Update absolute value.
+            ax0 = 0.5f - ax0;
+            ay0 = 0.5f - ay0;
+            az0 = 0.5f - az0;
+
+            // Update relative coordinate.
+            xri = xNSign * ax0;
+            yri = yNSign * ay0;
+            zri = zNSign * az0;
+
+            // Update falloff.
+            a += (0.75f - ax0) - (ay0 + az0);
+
+            // Update prime for hash.
+            xrbp += (xNSign >> 1) & PRIME_X;
+            yrbp += (yNSign >> 1) & PRIME_Y;
+            zrbp += (zNSign >> 1) & PRIME_Z;
+
+            // Update the reverse sign indicators.
+            xNSign = -xNSign;
+            yNSign = -yNSign;
+            zNSign = -zNSign;
+
+            // And finally update the seed for the other lattice copy.
+            seed ^= SEED_FLIP_3D;
+        }
+
+        return value;
+    }
+
+    /*
+     * Seed-bound Sampler
+     */
+
+    /**
+     * OpenSimplex2 noise bound to one seed, for callers that hold a noise layer as an object.
+     * The seed is worked into the sampler's own gradient tables when it is built: the lattice
+     * hash leaves the seed out and only picks a table entry, so nothing per seed is left to mix
+     * at each vertex, and samplers sharing a walk hash each vertex once between them (see
+     * noise3_ImproveXY(Sampler[], ...)). Because the hash differs, a sampler draws different
+     * noise from the static functions given the same seed. Instances are immutable and can be
+     * shared between threads.
+     */
+    public static final class Sampler {
+        private static final int TABLE_EXPONENT = 11;
+        private static final int TABLE_SIZE = 1 << TABLE_EXPONENT;
+
+        private final long seed;
+        // per lattice hash, the GRADIENTS_2D and GRADIENTS_3D index of that vertex's gradient
+        private final short[] gradients2D = new short[TABLE_SIZE];
+        private final short[] gradients3D = new short[TABLE_SIZE];
+
+        public Sampler(long seed) {
+            this.seed = seed;
+
+            // A seeded shuffle of the table slots, so every gradient fills the same number of them.
+            short[] slots = new short[TABLE_SIZE];
+            for (int i = 0; i < TABLE_SIZE; i++) {
+                slots[i] = (short)i;
+            }
+            long state = seed;
+            for (int i = TABLE_SIZE - 1; i >= 0; i--) {
+                state = state * 6364136223846793005L + 1442695040888963407L;
+                int r = (int)((state >>> 33) % (i + 1));
+                int g = slots[r];
+                slots[r] = slots[i];
+                gradients2D[i] = (short)((g & (N_GRADS_2D - 1)) << 1);
+                gradients3D[i] = (short)((g & (N_GRADS_3D - 1)) << 2);
+            }
+        }
+
+        public long getSeed() {
+            return seed;
+        }
+
+        /**
+         * 2D Simplex noise, standard lattice orientation.
+         */
+        public float noise2(double x, double y) {
+            double s = SKEW_2D * (x + y);
+            double xs = x + s, ys = y + s;
+
+            int xsb = fastFloor(xs), ysb = fastFloor(ys);
+            float xi = (float)(xs - xsb), yi = (float)(ys - ysb);
+            long xsbp = xsb * PRIME_X, ysbp = ysb * PRIME_Y;
+
+            float t = (xi + yi) * (float)UNSKEW_2D;
+            float dx0 = xi + t, dy0 = yi + t;
+
+            float value = 0;
+            float a0 = RSQUARED_2D - dx0 * dx0 - dy0 * dy0;
+            if (a0 > 0) {
+                value = (a0 * a0) * (a0 * a0) * grad(gradients2D[index(xsbp, ysbp)], dx0, dy0);
+            }
+
+            float a1 = (float)(2 * (1 + 2 * UNSKEW_2D) * (1 / UNSKEW_2D + 2)) * t + ((float)(-2 * (1 + 2 * UNSKEW_2D) * (1 + 2 * UNSKEW_2D)) + a0);
+            if (a1 > 0) {
+                float dx1 = dx0 - (float)(1 + 2 * UNSKEW_2D);
+                float dy1 = dy0 - (float)(1 + 2 * UNSKEW_2D);
+                value += (a1 * a1) * (a1 * a1) * grad(gradients2D[index(xsbp + PRIME_X, ysbp + PRIME_Y)], dx1, dy1);
+            }
+
+            if (dy0 > dx0) {
+                float dx2 = dx0 - (float)UNSKEW_2D;
+                float dy2 = dy0 - (float)(UNSKEW_2D + 1);
+                float a2 = RSQUARED_2D - dx2 * dx2 - dy2 * dy2;
+                if (a2 > 0) {
+                    value += (a2 * a2) * (a2 * a2) * grad(gradients2D[index(xsbp, ysbp + PRIME_Y)], dx2, dy2);
+                }
+            }
+            else
+            {
+                float dx2 = dx0 - (float)(UNSKEW_2D + 1);
+                float dy2 = dy0 - (float)UNSKEW_2D;
+                float a2 = RSQUARED_2D - dx2 * dx2 - dy2 * dy2;
+                if (a2 > 0) {
+                    value += (a2 * a2) * (a2 * a2) * grad(gradients2D[index(xsbp + PRIME_X, ysbp)], dx2, dy2);
+                }
+            }
+
+            return value;
+        }
+
+        /**
+         * noise2, also writing d/dx, d/dy to gradient[0], gradient[1]. The value is bit-identical to noise2's.
+         */
+        public float noise2_Gradient(double x, double y, float[] gradient) {
+            double s = SKEW_2D * (x + y);
+            double xs = x + s, ys = y + s;
+
+            int xsb = fastFloor(xs), ysb = fastFloor(ys);
+            float xi = (float)(xs - xsb), yi = (float)(ys - ysb);
+            long xsbp = xsb * PRIME_X, ysbp = ysb * PRIME_Y;
+
+            float t = (xi + yi) * (float)UNSKEW_2D;
+            float dx0 = xi + t, dy0 = yi + t;
+
+            gradient[0] = 0;
+            gradient[1] = 0;
+            float value = 0;
+            float a0 = RSQUARED_2D - dx0 * dx0 - dy0 * dy0;
+            if (a0 > 0) {
+                value = contribution(a0, gradients2D[index(xsbp, ysbp)], dx0, dy0, gradient);
+            }
+
+            float a1 = (float)(2 * (1 + 2 * UNSKEW_2D) * (1 / UNSKEW_2D + 2)) * t + ((float)(-2 * (1 + 2 * UNSKEW_2D) * (1 + 2 * UNSKEW_2D)) + a0);
+            if (a1 > 0) {
+                float dx1 = dx0 - (float)(1 + 2 * UNSKEW_2D);
+                float dy1 = dy0 - (float)(1 + 2 * UNSKEW_2D);
+                value += contribution(a1, gradients2D[index(xsbp + PRIME_X, ysbp + PRIME_Y)], dx1, dy1, gradient);
+            }
+
+            if (dy0 > dx0) {
+                float dx2 = dx0 - (float)UNSKEW_2D;
+                float dy2 = dy0 - (float)(UNSKEW_2D + 1);
+                float a2 = RSQUARED_2D - dx2 * dx2 - dy2 * dy2;
+                if (a2 > 0) {
+                    value += contribution(a2, gradients2D[index(xsbp, ysbp + PRIME_Y)], dx2, dy2, gradient);
+                }
+            }
+            else
+            {
+                float dx2 = dx0 - (float)(UNSKEW_2D + 1);
+                float dy2 = dy0 - (float)UNSKEW_2D;
+                float a2 = RSQUARED_2D - dx2 * dx2 - dy2 * dy2;
+                if (a2 > 0) {
+                    value += contribution(a2, gradients2D[index(xsbp + PRIME_X, ysbp)], dx2, dy2, gradient);
+                }
+            }
+
+            return value;
+        }
+
+        /**
+         * noise2 along one row: sample i is taken at (x[i], y) and written to out[offset + i].
+         * As with the static noise2_Row, gradient indices are kept per lattice cell while x stays in it.
+         * Results are bit-identical to calling noise2 once per point.
+         */
+        public void noise2_Row(double[] x, double y, int width, float[] out, int offset) {
+            int cellX = 0, cellY = 0;
+            long xsbp = 0, ysbp = 0;
+            int gi0 = 0, gi1 = 0, gi2 = 0, gi3 = 0;
+            int known = 0; // bit per cached vertex; 0 forces a lookup on the first sample
+
+            for (int i = 0; i < width; i++) {
+                double s = SKEW_2D * (x[i] + y);
+                double xs = x[i] + s, ys = y + s;
+                int xsb = fastFloor(xs), ysb = fastFloor(ys);
+                float xi = (float)(xs - xsb), yi = (float)(ys - ysb);
+
+                if (known == 0 || xsb != cellX || ysb != cellY) {
+                    cellX = xsb;
+                    cellY = ysb;
+                    xsbp = xsb * PRIME_X;
+                    ysbp = ysb * PRIME_Y;
+                    known = 0x10;
+                }
+
+                float t = (xi + yi) * (float)UNSKEW_2D;
+                float dx0 = xi + t, dy0 = yi + t;
+
+                float value = 0;
+                float a0 = RSQUARED_2D - dx0 * dx0 - dy0 * dy0;
+                if (a0 > 0) {
+                    if ((known & 1) == 0) { gi0 = gradients2D[index(xsbp, ysbp)]; known |= 1; }
+                    value = (a0 * a0) * (a0 * a0) * grad(gi0, dx0, dy0);
+                }
+
+                float a1 = (float)(2 * (1 + 2 * UNSKEW_2D) * (1 / UNSKEW_2D + 2)) * t + ((float)(-2 * (1 + 2 * UNSKEW_2D) * (1 + 2 * UNSKEW_2D)) + a0);
+                if (a1 > 0) {
+                    float dx1 = dx0 - (float)(1 + 2 * UNSKEW_2D);
+                    float dy1 = dy0 - (float)(1 + 2 * UNSKEW_2D);
+                    if ((known & 2) == 0) { gi1 = gradients2D[index(xsbp + PRIME_X, ysbp + PRIME_Y)]; known |= 2; }
+                    value += (a1 * a1) * (a1 * a1) * grad(gi1, dx1, dy1);
+                }
+
+                if (dy0 > dx0) {
+                    float dx2 = dx0 - (float)UNSKEW_2D;
+                    float dy2 = dy0 - (float)(UNSKEW_2D + 1);
+                    float a2 = RSQUARED_2D - dx2 * dx2 - dy2 * dy2;
+                    if (a2 > 0) {
+                        if ((known & 4) == 0) { gi2 = gradients2D[index(xsbp, ysbp + PRIME_Y)]; known |= 4; }
+                        value += (a2 * a2) * (a2 * a2) * grad(gi2, dx2, dy2);
+                    }
+                }
+                else
+                {
+                    float dx2 = dx0 - (float)(UNSKEW_2D + 1);
+                    float dy2 = dy0 - (float)UNSKEW_2D;
+                    float a2 = RSQUARED_2D - dx2 * dx2 - dy2 * dy2;
+                    if (a2 > 0) {
+                        if ((known & 8) == 0) { gi3 = gradients2D[index(xsbp + PRIME_X, ysbp)]; known |= 8; }
+                        value += (a2 * a2) * (a2 * a2) * grad(gi3, dx2, dy2);
+                    }
+                }
+
+                out[offset + i] = value;
+            }
+        }
+
+        /**
+         * 3D OpenSimplex2 noise, with better visual isotropy in (X, Y).
+         */
+        public float noise3_ImproveXY(double x, double y, double z) {
+            double xy = x + y;
+            double s2 = xy * ROTATE_3D_ORTHOGONALIZER;
+            double zz = z * ROOT3OVER3;
+            double xr = x + s2 + zz;
+            double yr = y + s2 + zz;
+            double zr = xy * -ROOT3OVER3 + zz;
+
+            int xrb = fastRound(xr), yrb = fastRound(yr), zrb = fastRound(zr);
+            float xri = (float)(xr - xrb), yri = (float)(yr - yrb), zri = (float)(zr - zrb);
+            int xNSign = (int)(-1.0f - xri) | 1, yNSign = (int)(-1.0f - yri) | 1, zNSign = (int)(-1.0f - zri) | 1;
+            float ax0 = xNSign * -xri, ay0 = yNSign * -yri, az0 = zNSign * -zri;
+            long xrbp = xrb * PRIME_X, yrbp = yrb * PRIME_Y, zrbp = zrb * PRIME_Z;
+
+            long copy = 0;
+            float value = 0;
+            float a = (RSQUARED_3D - xri * xri) - (yri * yri + zri * zri);
+            for (int l = 0; ; l++) {
+
+                if (a > 0) {
+                    value += (a * a) * (a * a) * grad(gradients3D[index(copy, xrbp, yrbp, zrbp)], xri, yri, zri);
+                }
+
+                if (ax0 >= ay0 && ax0 >= az0) {
+                    float b = a + ax0 + ax0;
+                    if (b > 1) {
+                        b -= 1;
+                        value += (b * b) * (b * b) * grad(gradients3D[index(copy, xrbp - xNSign * PRIME_X, yrbp, zrbp)], xri + xNSign, yri, zri);
+                    }
+                }
+                else if (ay0 > ax0 && ay0 >= az0) {
+                    float b = a + ay0 + ay0;
+                    if (b > 1) {
+                        b -= 1;
+                        value += (b * b) * (b * b) * grad(gradients3D[index(copy, xrbp, yrbp - yNSign * PRIME_Y, zrbp)], xri, yri + yNSign, zri);
+                    }
+                }
+                else
+                {
+                    float b = a + az0 + az0;
+                    if (b > 1) {
+                        b -= 1;
+                        value += (b * b) * (b * b) * grad(gradients3D[index(copy, xrbp, yrbp, zrbp - zNSign * PRIME_Z)], xri, yri, zri + zNSign);
+                    }
+                }
+
+                if (l == 1) break;
+
+                ax0 = 0.5f - ax0;
+                ay0 = 0.5f - ay0;
+                az0 = 0.5f - az0;
+
+                xri = xNSign * ax0;
+                yri = yNSign * ay0;
+                zri = zNSign * az0;
+
+                a += (0.75f - ax0) - (ay0 + az0);
+
+                xrbp += (xNSign >> 1) & PRIME_X;
+                yrbp += (yNSign >> 1) & PRIME_Y;
+                zrbp += (zNSign >> 1) & PRIME_Z;
+
+                xNSign = -xNSign;
+                yNSign = -yNSign;
+                zNSign = -zNSign;
+
+                // The other lattice copy hashes apart, as the static walk does by flipping the seed.
+                copy = SEED_FLIP_3D;
+            }
+
+            return value;
+        }
+
+        /**
+         * noise3_ImproveXY, also writing d/dx, d/dy, d/dz to gradient[0], gradient[1], gradient[2].
+         * The value is bit-identical to noise3_ImproveXY's.
+         */
+        public float noise3_ImproveXY_Gradient(double x, double y, double z, float[] gradient) {
+            double xy = x + y;
+            double s2 = xy * ROTATE_3D_ORTHOGONALIZER;
+            double zz = z * ROOT3OVER3;
+            double xr = x + s2 + zz;
+            double yr = y + s2 + zz;
+            double zr = xy * -ROOT3OVER3 + zz;
+
+            int xrb = fastRound(xr), yrb = fastRound(yr), zrb = fastRound(zr);
+            float xri = (float)(xr - xrb), yri = (float)(yr - yrb), zri = (float)(zr - zrb);
+            int xNSign = (int)(-1.0f - xri) | 1, yNSign = (int)(-1.0f - yri) | 1, zNSign = (int)(-1.0f - zri) | 1;
+            float ax0 = xNSign * -xri, ay0 = yNSign * -yri, az0 = zNSign * -zri;
+            long xrbp = xrb * PRIME_X, yrbp = yrb * PRIME_Y, zrbp = zrb * PRIME_Z;
+
+            gradient[0] = 0;
+            gradient[1] = 0;
+            gradient[2] = 0;
+            long copy = 0;
+            float value = 0;
+            float a = (RSQUARED_3D - xri * xri) - (yri * yri + zri * zri);
+            for (int l = 0; ; l++) {
+
+                if (a > 0) {
+                    value += contribution(a, gradients3D[index(copy, xrbp, yrbp, zrbp)], xri, yri, zri, gradient);
+                }
+
+                if (ax0 >= ay0 && ax0 >= az0) {
+                    float b = a + ax0 + ax0;
+                    if (b > 1) {
+                        b -= 1;
+                        value += contribution(b, gradients3D[index(copy, xrbp - xNSign * PRIME_X, yrbp, zrbp)], xri + xNSign, yri, zri, gradient);
+                    }
+                }
+                else if (ay0 > ax0 && ay0 >= az0) {
+                    float b = a + ay0 + ay0;
+                    if (b > 1) {
+                        b -= 1;
+                        value += contribution(b, gradients3D[index(copy, xrbp, yrbp - yNSign * PRIME_Y, zrbp)], xri, yri + yNSign, zri, gradient);
+                    }
+                }
+                else
+                {
+                    float b = a + az0 + az0;
+                    if (b > 1) {
+                        b -= 1;
+                        value += contribution(b, gradients3D[index(copy, xrbp, yrbp, zrbp - zNSign * PRIME_Z)], xri, yri, zri + zNSign, gradient);
+                    }
+                }
+
+                if (l == 1) break;
+
+                ax0 = 0.5f - ax0;
+                ay0 = 0.5f - ay0;
+                az0 = 0.5f - az0;
+
+                xri = xNSign * ax0;
+                yri = yNSign * ay0;
+                zri = zNSign * az0;
+
+                a += (0.75f - ax0) - (ay0 + az0);
+
+                xrbp += (xNSign >> 1) & PRIME_X;
+                yrbp += (yNSign >> 1) & PRIME_Y;
+                zrbp += (zNSign >> 1) & PRIME_Z;
+
+                xNSign = -xNSign;
+                yNSign = -yNSign;
+                zNSign = -zNSign;
+
+                copy = SEED_FLIP_3D;
+            }
+
+            // Back through the rotation, as in the static noise3_ImproveXY_Gradient.
+            float dxr = gradient[0], dyr = gradient[1], dzr = gradient[2];
+            gradient[0] = (float)((1 + ROTATE_3D_ORTHOGONALIZER) * dxr + ROTATE_3D_ORTHOGONALIZER * dyr - ROOT3OVER3 * dzr);
+            gradient[1] = (float)(ROTATE_3D_ORTHOGONALIZER * dxr + (1 + ROTATE_3D_ORTHOGONALIZER) * dyr - ROOT3OVER3 * dzr);
+            gradient[2] = (float)(ROOT3OVER3 * (dxr + dyr + dzr));
+            return value;
+        }
+
+        /**
+         * The table slot of a 2D lattice vertex, from its prime-multiplied coordinates.
+         */
+        private static int index(long xsvp, long ysvp) {
+            return (int)(((xsvp ^ ysvp) * HASH_MULTIPLIER) >>> (64 - TABLE_EXPONENT));
+        }
+
+        /**
+         * The table slot of a 3D lattice vertex, from its lattice copy (0 or SEED_FLIP_3D)
+         * and prime-multiplied coordinates.
+         */
+        private static int index(long copy, long xrvp, long yrvp, long zrvp) {
+            return (int)((((copy ^ xrvp) ^ (yrvp ^ zrvp)) * HASH_MULTIPLIER) >>> (64 - TABLE_EXPONENT));
+        }
+
+        private static float grad(int gi, float dx, float dy) {
+            return GRADIENTS_2D[gi | 0] * dx + GRADIENTS_2D[gi | 1] * dy;
+        }
+
+        private static float grad(int gi, float dx, float dy, float dz) {
+            return GRADIENTS_3D[gi | 0] * dx + GRADIENTS_3D[gi | 1] * dy + GRADIENTS_3D[gi | 2] * dz;
+        }
+    }
+
     /*
      * Utility
      */
@@ -467,6 +1597,44 @@ public class OpenSimplex2 {
         return (GRADIENTS_4D[gi | 0] * dx + GRADIENTS_4D[gi | 1] * dy) + (GRADIENTS_4D[gi | 2] * dz + GRADIENTS_4D[gi | 3] * dw);
     }
 
+    private static int gradIndex(long seed, long xsvp, long ysvp) {
+        long hash = seed ^ xsvp ^ ysvp;
+        hash *= HASH_MULTIPLIER;
+        hash ^= hash >> (64 - N_GRADS_2D_EXPONENT + 1);
+        return (int)hash & ((N_GRADS_2D - 1) << 1);
+    }
+
+    private static int gradIndex(long seed, long xrvp, long yrvp, long zrvp) {
+        long hash = (seed ^ xrvp) ^ (yrvp ^ zrvp);
+        hash *= HASH_MULTIPLIER;
+        hash ^= hash >> (64 - N_GRADS_3D_EXPONENT + 2);
+        return (int)hash & ((N_GRADS_3D - 1) << 2);
+    }
+
+    /**
+     * One vertex's a^4 * (g . d), adding its derivative -8a^3 (g . d) d + a^4 g to gradient.
+     */
+    private static float contribution(float a, int gi, float dx, float dy, float[] gradient) {
+        float gx = GRADIENTS_2D[gi | 0], gy = GRADIENTS_2D[gi | 1];
+        float g = gx * dx + gy * dy;
+        float a2 = a * a;
+        float falloff = -8 * a2 * a * g;
+        gradient[0] += falloff * dx + a2 * a2 * gx;
+        gradient[1] += falloff * dy + a2 * a2 * gy;
+        return (a * a) * (a * a) * g;
+    }
+
+    private static float contribution(float a, int gi, float dx, float dy, float dz, float[] gradient) {
+        float gx = GRADIENTS_3D[gi | 0], gy = GRADIENTS_3D[gi | 1], gz = GRADIENTS_3D[gi | 2];
+        float g = gx * dx + gy * dy + gz * dz;
+        float a2 = a * a;
+        float falloff = -8 * a2 * a * g;
+        gradient[0] += falloff * dx + a2 * a2 * gx;
+        gradient[1] += falloff * dy + a2 * a2 * gy;
+        gradient[2] += falloff * dz + a2 * a2 * gz;
+        return (a * a) * (a * a) * g;
+    }
+
     private static int fastFloor(double x) {
         int xi = (int)x;
         return x < xi ? xi - 1 : xi;
@@ -480,9 +1648,9 @@ public class OpenSimplex2 {
      * gradients
      */
 
-    private static float[] GRADIENTS_2D;
-    private static float[] GRADIENTS_3D;
-    private static float[] GRADIENTS_4D;
+    private static final float[] GRADIENTS_2D;
+    private static final float[] GRADIENTS_3D;
+    private static final float[] GRADIENTS_4D;
     static {
 
         GRADIENTS_2D = new float[N_GRADS_2D * 2];
@@ -0,0 +1,63 @@
+package dmk.terrainGenerator;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Renders a region of any size in strips of whole rows, threads strips at a time, and writes them to a
+ * sink in order as they finish. At most twice as many strips as threads are held at once, so memory
+ * depends on the width and strip height, not on how tall the region is.
+ */
+@RequiredArgsConstructor
+public class BatchRenderer {
+	// pixels per strip the default strip height aims for
+	private static final int STRIP_PIXELS = 1 << 20;
+
+	private final TerrainGenerator terrainGenerator;
+	private final int threads;
+
+	/**
+	 * About STRIP_PIXELS per strip, and never more rows than a band of a parallel render.
+	 */
+	public static int defaultStripRows(int width) {
+		return Math.max(1, Math.min(64, STRIP_PIXELS / width));
+	}
+
+	public void render(int left, int top, int width, int height, double scale, int stripRows, StripSink sink)
+			throws IOException, InterruptedException {
+		final ExecutorService pool = Executors.newFixedThreadPool(threads);
+		final Deque<Future<BufferedImage>> inFlight = new ArrayDeque<>();
+		try {
+			for (int row = 0; row < height; row += stripRows) {
+				if (inFlight.size() == threads * 2)
+					write(inFlight.poll(), sink);
+
+				final int stripTop = top + row;
+				final int rows = Math.min(stripRows, height - row);
+				inFlight.add(pool.submit(() -> terrainGenerator.generate(left, stripTop, width, rows, scale)));
+			}
+			while (!inFlight.isEmpty())
+				write(inFlight.poll(), sink);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	private static void write(Future<BufferedImage> strip, StripSink sink) throws IOException, InterruptedException {
+		final BufferedImage image;
+		try {
+			image = strip.get();
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("A strip failed to render.", e.getCause());
+		}
+		sink.write(TerrainGenerator.rgb(image), image.getHeight());
+	}
+}
@@ -0,0 +1,154 @@
+package dmk.terrainGenerator;
+
+/**
+ * A land classifier baked into a grid over (height, tide, humidity, volcanicActivity), so classifying a pixel
+ * is one array read. A cell holds the land its rule gives at every corner and at the centre of the cell;
+ * where those disagree a boundary runs through the cell, and it holds MIXED for the caller to classify
+ * directly. A feature thinner than a cell can slip between the probes, which is what verification is for.
+ */
+class BiomeTable {
+	static final int MIXED = -1;
+
+	// lands are stored as bytes
+	static final int MAX_LANDS = Byte.MAX_VALUE;
+
+	interface Rule {
+		/**
+		 * A land id in [0, MAX_LANDS).
+		 */
+		int land(double height, double tide, double humidity, double volcanicActivity);
+	}
+
+	/**
+	 * How one input maps onto cells. A uniform axis cuts [min, max] into equal cells and is probed at
+	 * their edges and centres. A discrete axis is for an input the rule has already rounded to an integer,
+	 * one cell per value, and an ignored axis is for one the rule doesn't read; both are probed once per cell.
+	 */
+	static class Axis {
+		private final double min;
+		private final double max;
+		private final int cells;
+		private final boolean uniform;
+		private final double size;
+
+		private Axis(double min, double max, int cells, boolean uniform) {
+			this.min = min;
+			this.max = max;
+			this.cells = cells;
+			this.uniform = uniform;
+			this.size = uniform ? (max - min) / cells : 1;
+		}
+
+		static Axis uniform(double min, double max, int cells) {
+			return new Axis(min, max, cells, true);
+		}
+
+		static Axis discrete(int min, int max) {
+			return new Axis(min, max, max - min + 1, false);
+		}
+
+		static Axis ignored() {
+			return new Axis(0, 0, 1, false);
+		}
+
+		int cell(double value) {
+			if (cells == 1 && !uniform)
+				return 0;
+			if (!(value >= min && value <= max))
+				return -1;
+			return uniform
+					? Math.min((int)((value - min) / size), cells - 1)
+					: (int)(value - min);
+		}
+
+		private int vertices() {
+			return uniform ? cells + 1 : cells;
+		}
+
+		private double vertex(int vertex) {
+			if (!uniform)
+				return min + vertex;
+			return vertex == cells ? max : min + vertex * size;
+		}
+
+		private double centre(int cell) {
+			return uniform ? min + (cell + 0.5) * size : min + cell;
+		}
+	}
+
+	private final Axis height;
+	private final Axis tide;
+	private final Axis humidity;
+	private final Axis volcanicActivity;
+	private final byte[] lands;
+
+	private BiomeTable(Axis height, Axis tide, Axis humidity, Axis volcanicActivity, byte[] lands) {
+		this.height = height;
+		this.tide = tide;
+		this.humidity = humidity;
+		this.volcanicActivity = volcanicActivity;
+		this.lands = lands;
+	}
+
+	static BiomeTable bake(Rule rule, Axis height, Axis tide, Axis humidity, Axis volcanicActivity) {
+		// every vertex once, shared between the cells around it
+		final int vh = height.vertices(), vt = tide.vertices(), vu = humidity.vertices(), vv = volcanicActivity.vertices();
+		final byte[] vertices = new byte[vh * vt * vu * vv];
+		for (int h = 0; h < vh; ++h) {
+			for (int t = 0; t < vt; ++t) {
+				for (int u = 0; u < vu; ++u) {
+					for (int v = 0; v < vv; ++v) {
+						vertices[((h * vt + t) * vu + u) * vv + v] = (byte)rule.land(
+								height.vertex(h), tide.vertex(t), humidity.vertex(u), volcanicActivity.vertex(v));
+					}
+				}
+			}
+		}
+
+		final int dh = height.uniform ? 1 : 0, dt = tide.uniform ? 1 : 0, du = humidity.uniform ? 1 : 0, dv = volcanicActivity.uniform ? 1 : 0;
+		final byte[] lands = new byte[height.cells * tide.cells * humidity.cells * volcanicActivity.cells];
+		for (int h = 0; h < height.cells; ++h) {
+			for (int t = 0; t < tide.cells; ++t) {
+				for (int u = 0; u < humidity.cells; ++u) {
+					for (int v = 0; v < volcanicActivity.cells; ++v) {
+						byte land = (byte)rule.land(height.centre(h), tide.centre(t), humidity.centre(u), volcanicActivity.centre(v));
+						// the 2^n corners, n being the number of uniform axes
+						for (int corner = 0; corner < 16 && land != MIXED; ++corner) {
+							final int ch = corner & dh, ct = (corner >> 1) & dt, cu = (corner >> 2) & du, cv = (corner >> 3) & dv;
+							if (vertices[(((h + ch) * vt + t + ct) * vu + u + cu) * vv + v + cv] != land)
+								land = MIXED;
+						}
+						lands[((h * tide.cells + t) * humidity.cells + u) * volcanicActivity.cells + v] = land;
+					}
+				}
+			}
+		}
+
+		return new BiomeTable(height, tide, humidity, volcanicActivity, lands);
+	}
+
+	/**
+	 * The baked land id, or MIXED if the point falls in a cell a boundary passes through or outside the grid.
+	 */
+	int land(double height, double tide, double humidity, double volcanicActivity) {
+		final int h = this.height.cell(height);
+		final int t = this.tide.cell(tide);
+		final int u = this.humidity.cell(humidity);
+		final int v = this.volcanicActivity.cell(volcanicActivity);
+		if (h < 0 || t < 0 || u < 0 || v < 0)
+			return MIXED;
+		return lands[((h * this.tide.cells + t) * this.humidity.cells + u) * this.volcanicActivity.cells + v];
+	}
+
+	/**
+	 * Share of cells holding MIXED.
+	 */
+	double getMixedFraction() {
+		int mixed = 0;
+		for (byte land : lands) {
+			if (land == MIXED)
+				mixed++;
+		}
+		return mixed / (double)lands.length;
+	}
+}
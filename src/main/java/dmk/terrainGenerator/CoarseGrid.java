@@ -0,0 +1,166 @@
+package dmk.terrainGenerator;
+
+import dmk.openSimplex.Fractal;
+
+/**
+ * Samples a smooth per-pixel field on a coarse lattice and Catmull-Rom upsamples it into a tile.
+ * Lattice nodes sit on absolute pixel coordinates that are multiples of the step, so neighbouring
+ * tiles (and any split of one tile into bands) evaluate the same nodes and meet without seams.
+ * A step of 1 evaluates every pixel directly, which is exactly the full-resolution result.
+ */
+class CoarseGrid {
+	static final int MAX_STEP = 32;
+
+	// worst-case Catmull-Rom error on a unit sine, indexed by quarter samples per period
+	private static final int TABLE_RESOLUTION = 4;
+	private static final double[] SINE_ERROR = new double[64 * TABLE_RESOLUTION + 1];
+	static {
+		for (int i = 0; i < SINE_ERROR.length; ++i)
+			SINE_ERROR[i] = sineError(i / (double)TABLE_RESOLUTION);
+	}
+
+	interface Field {
+		double at(int x, int y);
+	}
+
+	/**
+	 * A field evaluated a grid at a time: fills out[j * width + i] with the field at (x0 + i * step, y0 + j * step).
+	 */
+	interface Lattice {
+		void at(int x0, int y0, int step, int width, int height, double[] out);
+	}
+
+	/**
+	 * The largest power-of-two step whose estimated interpolation error for the fractal stays within
+	 * errorBound. Each octave is treated as a sine of its period and amplitude; the 1D error is doubled
+	 * for the two interpolated axes. spacing is the distance between pixels in the fractal's input units.
+	 */
+	static int chooseStep(Fractal fractal, double spacing, double errorBound) {
+		if (errorBound <= 0 || spacing <= 0)
+			return 1;
+
+		int step = 1;
+		while (step < MAX_STEP && estimateError(fractal, spacing, step * 2) <= errorBound)
+			step *= 2;
+		return step;
+	}
+
+	static double estimateError(Fractal fractal, double spacing, int step) {
+		double error = 0;
+		for (int i = 0; i < fractal.getOctaves(); ++i) {
+			final double amplitude = fractal.getAmplitude(i, spacing);
+			if (amplitude > 0)
+				error += 2 * amplitude * lookupSineError(fractal.getPeriod(i) / (spacing * step));
+		}
+		return error;
+	}
+
+	/**
+	 * Fills out[j * width + i] with field at (left + i, top + j), evaluating it only on the lattice.
+	 */
+	static void sample(Field field, int step, int left, int top, int width, int height, double[] out) {
+		sample((x0, y0, nodeStep, nodesX, nodesY, nodes) -> {
+			for (int j = 0; j < nodesY; ++j) {
+				for (int i = 0; i < nodesX; ++i)
+					nodes[j * nodesX + i] = field.at(x0 + i * nodeStep, y0 + j * nodeStep);
+			}
+		}, step, left, top, width, height, out);
+	}
+
+	/**
+	 * As sample(Field, ...), handing the field every pixel, or every lattice node, as one grid.
+	 */
+	static void sample(Lattice field, int step, int left, int top, int width, int height, double[] out) {
+		if (step <= 1) {
+			field.at(left, top, 1, width, height, out);
+			return;
+		}
+
+		// one node of margin before and two after, for the four-tap kernel
+		final int nodeLeft = Math.floorDiv(left, step) - 1;
+		final int nodeTop = Math.floorDiv(top, step) - 1;
+		final int nodesX = Math.floorDiv(left + width - 1, step) + 3 - nodeLeft;
+		final int nodesY = Math.floorDiv(top + height - 1, step) + 3 - nodeTop;
+
+		final double[] nodes = new double[nodesX * nodesY];
+		field.at(nodeLeft * step, nodeTop * step, step, nodesX, nodesY, nodes);
+
+		final double[][] weights = kernelWeights(step);
+
+		// horizontal pass: every node row interpolated out to pixel columns
+		final double[] rows = new double[nodesY * width];
+		for (int i = 0; i < width; ++i) {
+			final int x = left + i;
+			final int node = Math.floorDiv(x, step) - 1 - nodeLeft;
+			final double[] w = weights[x - Math.floorDiv(x, step) * step];
+			for (int ny = 0; ny < nodesY; ++ny) {
+				final int n = ny * nodesX + node;
+				rows[ny * width + i] = w[0] * nodes[n] + w[1] * nodes[n + 1] + w[2] * nodes[n + 2] + w[3] * nodes[n + 3];
+			}
+		}
+
+		// vertical pass
+		for (int j = 0; j < height; ++j) {
+			final int y = top + j;
+			final int node = Math.floorDiv(y, step) - 1 - nodeTop;
+			final double[] w = weights[y - Math.floorDiv(y, step) * step];
+			for (int i = 0; i < width; ++i) {
+				final int n = node * width + i;
+				out[j * width + i] = w[0] * rows[n] + w[1] * rows[n + width] + w[2] * rows[n + 2 * width] + w[3] * rows[n + 3 * width];
+			}
+		}
+	}
+
+	/**
+	 * Catmull-Rom weights for each pixel offset 0..step-1 between two nodes.
+	 */
+	private static double[][] kernelWeights(int step) {
+		final double[][] weights = new double[step][];
+		for (int r = 0; r < step; ++r)
+			weights[r] = catmullRom(r / (double)step);
+		return weights;
+	}
+
+	private static double[] catmullRom(double t) {
+		final double t2 = t * t;
+		final double t3 = t2 * t;
+		return new double[] {
+				0.5 * (-t3 + 2 * t2 - t),
+				0.5 * (3 * t3 - 5 * t2 + 2),
+				0.5 * (-3 * t3 + 4 * t2 + t),
+				0.5 * (t3 - t2)
+		};
+	}
+
+	private static double lookupSineError(double samplesPerPeriod) {
+		final double index = samplesPerPeriod * TABLE_RESOLUTION;
+		if (index >= SINE_ERROR.length - 1)
+			return SINE_ERROR[SINE_ERROR.length - 1];
+		final int i = (int)index;
+		return SINE_ERROR[i] + (SINE_ERROR[i + 1] - SINE_ERROR[i]) * (index - i);
+	}
+
+	/**
+	 * Largest error interpolating sin(2 pi x / samplesPerPeriod) from its integer samples, over a spread of phases.
+	 * Below two samples per period the signal is lost entirely, so the error is the full swing.
+	 */
+	private static double sineError(double samplesPerPeriod) {
+		if (samplesPerPeriod <= 2)
+			return 2;
+
+		final double omega = 2 * Math.PI / samplesPerPeriod;
+		double worst = 0;
+		for (int phase = 0; phase < 16; ++phase) {
+			final double offset = phase / 16.0 * samplesPerPeriod;
+			for (int sub = 1; sub < 16; ++sub) {
+				final double t = sub / 16.0;
+				final double[] w = catmullRom(t);
+				double interpolated = 0;
+				for (int k = 0; k < 4; ++k)
+					interpolated += w[k] * Math.sin(omega * (k - 1 + offset));
+				worst = Math.max(worst, Math.abs(interpolated - Math.sin(omega * (t + offset))));
+			}
+		}
+		return worst;
+	}
+}
@@ -0,0 +1,106 @@
+package dmk.terrainGenerator;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A rendered tile deflated in memory, for the tiles the viewer has scrolled away from but may well come
+ * back to. A palette-indexed tile deflates its land ids, which run long within a biome and so compress
+ * far below a byte per pixel; any other tile deflates its RGB bytes. Deflating at BEST_SPEED takes a
+ * millisecond or two per tile and inflating less, against the hundred or so it costs to render one.
+ */
+class CompressedTile {
+	private final int width, height;
+	// the palette the ids index, null for an RGB tile
+	private final IndexColorModel palette;
+	private final byte[] data;
+
+	private CompressedTile(int width, int height, IndexColorModel palette, byte[] data) {
+		this.width = width;
+		this.height = height;
+		this.palette = palette;
+		this.data = data;
+	}
+
+	static CompressedTile of(BufferedImage image) {
+		final int width = image.getWidth();
+		final int height = image.getHeight();
+		if (image.getColorModel() instanceof IndexColorModel && image.getRaster().getDataBuffer() instanceof DataBufferByte)
+			return new CompressedTile(width, height, (IndexColorModel)image.getColorModel(), deflate(((DataBufferByte)image.getRaster().getDataBuffer()).getData()));
+
+		final int[] pixels = TerrainGenerator.rgb(image);
+		final byte[] rgb = new byte[pixels.length * 3];
+		for (int i = 0; i < pixels.length; ++i) {
+			rgb[i * 3] = (byte)(pixels[i] >> 16);
+			rgb[i * 3 + 1] = (byte)(pixels[i] >> 8);
+			rgb[i * 3 + 2] = (byte)pixels[i];
+		}
+		return new CompressedTile(width, height, null, deflate(rgb));
+	}
+
+	/**
+	 * The tile as it was compressed: TYPE_BYTE_INDEXED over the same palette, or TYPE_INT_RGB.
+	 */
+	BufferedImage toImage() {
+		if (palette != null) {
+			final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED, palette);
+			inflate(((DataBufferByte)image.getRaster().getDataBuffer()).getData());
+			return image;
+		}
+
+		final byte[] rgb = new byte[width * height * 3];
+		inflate(rgb);
+		final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		final int[] pixels = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+		for (int i = 0; i < pixels.length; ++i)
+			pixels[i] = (rgb[i * 3] & 0xff) << 16 | (rgb[i * 3 + 1] & 0xff) << 8 | (rgb[i * 3 + 2] & 0xff);
+		return image;
+	}
+
+	long getBytes() {
+		return data.length;
+	}
+
+	private static byte[] deflate(byte[] raw) {
+		final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		try {
+			deflater.setInput(raw);
+			deflater.finish();
+			byte[] out = new byte[Math.max(64, raw.length / 8)];
+			int length = 0;
+			while (!deflater.finished()) {
+				if (length == out.length)
+					out = Arrays.copyOf(out, out.length * 2);
+				length += deflater.deflate(out, length, out.length - length);
+			}
+			return Arrays.copyOf(out, length);
+		} finally {
+			deflater.end();
+		}
+	}
+
+	private void inflate(byte[] into) {
+		final Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(data);
+			int length = 0;
+			while (length < into.length && !inflater.finished()) {
+				final int inflated = inflater.inflate(into, length, into.length - length);
+				if (inflated == 0 && inflater.needsInput())
+					break;
+				length += inflated;
+			}
+		} catch (DataFormatException e) {
+			// only ever inflating what deflate wrote
+			throw new IllegalStateException(e);
+		} finally {
+			inflater.end();
+		}
+	}
+}
@@ -5,6 +5,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -58,22 +59,27 @@ public class Generator {
 	}
 	
 	private void save(int[] outputArray, String filename) throws IOException {
-		BufferedImage outImage = new BufferedImage(outputWidth * 3, outputHeight * 3, BufferedImage.TYPE_INT_RGB);
-		for (int i = 0; i < outputArray.length; ++i) {
-			if (outputArray[i] == -1)
-				continue; // if a tile couldn't be placed then the square will remain black
-			
-			int top = (i / outputWidth) * 3;
-			int left = (i % outputWidth) * 3;
-			
-			for (int yOffset = 0; yOffset < 3; ++yOffset) {
-				for (int xOffset = 0; xOffset < 3; ++xOffset) {
-					outImage.setRGB(left + xOffset, top + yOffset, tiles.get(outputArray[i]).pixelAt(xOffset, yOffset));
+		// one row of 3x3 tiles at a time, so the image is never held whole
+		final int[] strip = new int[outputWidth * 3 * 3];
+		try (StripSink sink = new PngSink(Paths.get(root, filename), outputWidth * 3, outputHeight * 3)) {
+			for (int row = 0; row < outputHeight; ++row) {
+				Arrays.fill(strip, 0);
+				for (int column = 0; column < outputWidth; ++column) {
+					final int i = row * outputWidth + column;
+					if (outputArray[i] == -1)
+						continue; // if a tile couldn't be placed then the square will remain black
+					
+					int left = column * 3;
+					
+					for (int yOffset = 0; yOffset < 3; ++yOffset) {
+						for (int xOffset = 0; xOffset < 3; ++xOffset) {
+							strip[yOffset * outputWidth * 3 + left + xOffset] = tiles.get(outputArray[i]).pixelAt(xOffset, yOffset);
+						}
+					}
 				}
+				sink.write(strip, 3);
 			}
 		}
-		
-		ImageIO.write(outImage, "png", new File(root, filename));
 	}
 	
 	private int[] generateInternal(int width, int height, Map<Integer, Map<Edge, Set<Integer>>> matchingTiles) {
@@ -1,9 +1,8 @@
 package dmk.terrainGenerator;
 
-import java.awt.image.BufferedImage;
-import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
@@ -13,10 +12,9 @@ import java.util.List;
 import java.util.Set;
 import java.util.function.BiConsumer;
 
-import javax.imageio.ImageIO;
-
 import org.springframework.stereotype.Component;
 
+import dmk.openSimplex.Fractal;
 import dmk.openSimplex.OpenSimplex2;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
@@ -25,12 +23,21 @@ import lombok.RequiredArgsConstructor;
 public class GeneratorClouds {
 	private final String root = "/home/dan/git/terrainGenerator/src/main/resources/images";
 	private int seed;
+	private OpenSimplex2.Sampler heightNoise;
+	private Fractal elevationMap;
+	private Fractal climateMap;
+	private Fractal luckMap;
+	private Fractal treeMap;
+	private Fractal rockMap;
+	private Fractal flowerMap;
+	private Fractal moistureMap;
 	
 	private static final int START_X = 0;
 	private static final int START_Y = 0;
 	private static final int WIDTH = 500;
 	private static final int HEIGHT = 500;
 	private static final double FEATURE_SIZE = 256;
+	private static final int STRIP_ROWS = 64;
 	
 	private static final double SNOW_CLIMATE = 0.2;
 	private static final double DESERT_CLIMATE = 0.8;
@@ -58,37 +65,51 @@ public class GeneratorClouds {
 	
 	public void generate(int seed) throws FileNotFoundException, IOException {
 		this.seed = seed;
+		this.heightNoise = new OpenSimplex2.Sampler(seed);
+		this.elevationMap = map(seed, 50, 1, 2, 4, 10);
+		this.climateMap = map(seed, 100, 0.1, 1, 3, 5, 10);
+		this.luckMap = map(seed, 2000, 1, 5, 9, 12);
+		this.treeMap = map(seed, 20, 1, 4, 10);
+		this.rockMap = map(seed, 20, 1, 3);
+		this.flowerMap = map(seed, 75, 2, 4, 8);
+		this.moistureMap = map(seed, 200, 1, 2, 4);
 		
 //		double[] rockMultipliers = new double[] {1, 4};
 		
-		BufferedImage landImage = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+		// the images are streamed out STRIP_ROWS at a time rather than held whole
+		final int[] landStrip = new int[WIDTH * STRIP_ROWS];
 //		BufferedImage treeImage = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
 //		BufferedImage rockImage = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
 //		BufferedImage flowerImage = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
 //		BufferedImage luckImage = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
-		BufferedImage depthImage = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+		final int[] depthStrip = new int[WIDTH * STRIP_ROWS];
 		final Instant start = Instant.now();
 		
-		forEachTile((x, y) -> {
-			// while we wanna be able to position the start x/y anywhere (including negatives),
-			// of course reading/writing to an array requires a 0-based local position.
-			final int localX = localX(x);
-			final int localY = localY(y);
-			
+		try (StripSink landSink = new PngSink(Paths.get(root, String.format("land_%d.png", seed)), WIDTH, HEIGHT);
+				StripSink depthSink = new PngSink(Paths.get(root, String.format("depth_%d.png", seed)), WIDTH, HEIGHT)) {
+			for (int stripTop = 0; stripTop < HEIGHT; stripTop += STRIP_ROWS) {
+				final int firstRow = stripTop;
+				final int rows = Math.min(STRIP_ROWS, HEIGHT - stripTop);
+				forEachTile(firstRow, rows, (x, y) -> {
+					// while we wanna be able to position the start x/y anywhere (including negatives),
+					// of course reading/writing to an array requires a 0-based local position.
+					final int localX = localX(x);
+					final int localY = localY(y);
+					
 //			double depth = getMap(x, y, 800, new double[] {1, 3, 5});
 
-			double elevation = getElevation(x, y);
-			double height = (OpenSimplex2.noise3_ImproveXY(seed, x / FEATURE_SIZE, y / FEATURE_SIZE, elevation) + 1) * 0.5; // 0-1
-			
+					double elevation = getElevation(x, y);
+					double height = (heightNoise.noise3_ImproveXY(x / FEATURE_SIZE, y / FEATURE_SIZE, elevation) + 1) * 0.5; // 0-1
+					
 //			int rareBiome = getRareBiome(x, y);
 //			if (rareBiome == 1)
 //				luckImage.setRGB(localX, localY, 0xffffff);
-			
-			// 0 is cold af, 1 is hot af
-			double climate = 1 - ((getMap(x, y, 100, new double[] {0.1, 1, 3, 5, 10}) + 1) * 0.5);
+					
+					// 0 is cold af, 1 is hot af
+					double climate = 1 - ((climateMap.noise(x, y) + 1) * 0.5);
 //
-			Land land = getBiome(height, climate);
-			
+					Land land = getBiome(height, climate);
+					
 //			Integer treeColor = getTreeColor(x, y, land, height, climate);
 //			if (treeColor != null) {
 //				treeImage.setRGB(localX, localY, treeColor);
@@ -105,8 +126,12 @@ public class GeneratorClouds {
 //			}
 
 //			int rgb = 0x010101 * (int)((rock + 1) * 127.5);
-			landImage.setRGB(localX, localY, land.getColor());
-		});
+					landStrip[(localY - firstRow) * WIDTH + localX] = land.getColor();
+				});
+				landSink.write(landStrip, rows);
+				depthSink.write(depthStrip, rows);
+			}
+		}
 		
 		Duration elapsed = Duration.between(start, Instant.now());
 		System.out.println("elapsed: " + elapsed.toMillis() + "ms");
@@ -115,16 +140,14 @@ public class GeneratorClouds {
 //			System.out.println(String.format("%d: %d", e, Collections.frequency(randomInstance, e)));
 //		});
 		
-		ImageIO.write(landImage, "png", new File(root, String.format("land_%d.png", seed)));
 //		ImageIO.write(treeImage, "png", new File(root, String.format("trees_%d.png", START_X)));
 //		ImageIO.write(rockImage, "png", new File(root, String.format("rocks_%d.png", START_X)));
 //		ImageIO.write(flowerImage, "png", new File(root, String.format("flowers_%d.png", START_X)));
 //		ImageIO.write(luckImage, "png", new File(root, String.format("luck_%d.png", START_X)));
-		ImageIO.write(depthImage, "png", new File(root, String.format("depth_%d.png", seed)));
 	}
 	
 	private int getRareBiome(int x, int y) {
-		double luck = (getMap(x, y, 2000, new double[] {1, 5, 9, 12}) + 1) * 0.5; // 0-1
+		double luck = (luckMap.noise(x, y) + 1) * 0.5; // 0-1
 		
 		// 3037000498.5618362 is just Math.sqrt(Math.pow(INT_MAX, 2) + Math.pow(INT_MAX, 2))
 		// 14142.13562373095 is max dist for 10k/10k
@@ -225,7 +248,7 @@ public class GeneratorClouds {
 	
 
 	private Integer getRockColor(int x, int y, Land land, double height, double climate) {
-		double rock = (getMap(x, y, 20, new double[] {1, 3}) + 1) * 0.5; // 0-1; the blacker the more likely of rocks
+		double rock = (rockMap.noise(x, y) + 1) * 0.5; // 0-1; the blacker the more likely of rocks
 		if (land.getRockChance() > rock) {
 			// based on the rock map and a 500x500 map, this gives a number between 0 (1.1k occurrences) and 39 (5 occurrences)
 			final int randomness = (Math.abs((int)(x * 3.8)) + Math.abs((int)(y * 2.21))) % (int)Math.ceil(rock * 100);
@@ -274,7 +297,7 @@ public class GeneratorClouds {
 
 	private List<Integer> randomInstance = new ArrayList<>();
 	private Integer getFlowerColor(int x, int y, Land land, double height, double climate) {
-		double flower = 1 - ((getMap(x, y, 75, new double[] {2, 4, 8}) + 1) * 0.5); // 0-1, where 1 is more flowers
+		double flower = 1 - ((flowerMap.noise(x, y) + 1) * 0.5); // 0-1, where 1 is more flowers
 		if (land.getFlowerChance() > flower) {
 			final int randomness = (Math.abs((int)(x * 70.1)) + Math.abs((int)(y * 90.8))) % (int)Math.ceil(flower * 100);
 			
@@ -328,8 +351,8 @@ public class GeneratorClouds {
 		return surroundingLand;
 	}
 	
-	private void forEachTile(BiConsumer<Integer, Integer> fn) {
-		for (int y = START_Y - (HEIGHT / 2); y < (HEIGHT / 2) + START_Y; y++)
+	private void forEachTile(int firstRow, int rows, BiConsumer<Integer, Integer> fn) {
+		for (int y = START_Y - (HEIGHT / 2) + firstRow; y < START_Y - (HEIGHT / 2) + firstRow + rows; y++)
 		{
 			for (int x = START_X - (WIDTH / 2); x < (WIDTH / 2) + START_X; x++) {
 				fn.accept(x, y);
@@ -346,46 +369,22 @@ public class GeneratorClouds {
 	}
 	
 	private double getElevation(int x, int y) {
-		double nx = (x/(double)50);
-		double ny = (y/(double)50);
-
-		double pass1 = OpenSimplex2.noise2(seed, nx, ny) * 1;
-		double pass2 = OpenSimplex2.noise2(seed, 2 * nx, 2 * ny) * 0.5;
-		double pass3 = OpenSimplex2.noise2(seed, 4 * nx, 4 * ny) * 0.25;
-		double pass4 = OpenSimplex2.noise2(seed, 10 * nx, 10 * ny) * 0.1;
-		
-		double elevation = (pass1 + pass2 + pass3 + pass4) / 1.85;
-		return Math.max(-1, Math.min(1, elevation));
+		return elevationMap.noise(x, y);
 	}
 	
 	private double getMoisture(int x, int y) {
-		return getMap(x, y, 200, new double[] {1, 2, 4});
+		return moistureMap.noise(x, y);
 	}
 	
 	private double getTreeMap(int x, int y) {
-		double nx = (x/(double)20);
-		double ny = (y/(double)20);
-
-		double pass1 = OpenSimplex2.noise2(seed, nx, ny) * 1;
-		double pass3 = OpenSimplex2.noise2(seed, 4 * nx, 4 * ny) * 0.25;
-		double pass4 = OpenSimplex2.noise2(seed, 10 * nx, 10 * ny) * 0.1;
-		
-		double elevation = (pass1 + pass3 + pass4) / 1.35;
-		return Math.max(-1, Math.min(1, elevation));
+		return treeMap.noise(x, y);
 	}
 	
-	private double getMap(int x, int y, double frequency, double[] multipliers) {
-		double nx = x/frequency;
-		double ny = y/frequency;
-		
-		double map = 0;
-		double cumulativeFraction = 0;
-		for (int i = 0; i < multipliers.length; ++i) {
-			map += OpenSimplex2.noise2(seed, multipliers[i] * nx, multipliers[i] * ny) * (1 / multipliers[i]);
-			cumulativeFraction += 1 / multipliers[i];
-		}
-		
-		return Math.max(-1, Math.min(1, map / cumulativeFraction));
+	/**
+	 * Each multiplier is an octave weighted by 1/multiplier, sampled at (x, y) / frequency.
+	 */
+	private static Fractal map(int seed, double frequency, double... multipliers) {
+		return new Fractal(seed, frequency, multipliers, Fractal.inverseWeights(multipliers));
 	}
 	
 	private Land getBiome(double height, double climate) {
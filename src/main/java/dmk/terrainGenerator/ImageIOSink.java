@@ -0,0 +1,43 @@
+package dmk.terrainGenerator;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Collects the strips into one image and hands it to ImageIO on close, for any format ImageIO writes.
+ * The whole image is held in memory, so it suits renders that fit on the heap; PNG and PPM have
+ * streaming sinks for anything bigger.
+ */
+public class ImageIOSink implements StripSink {
+	private final Path path;
+	private final String format;
+	private final BufferedImage image;
+	private final int[] data;
+	private int written = 0;
+
+	public ImageIOSink(Path path, String format, int width, int height) throws IOException {
+		if (!ImageIO.getImageWritersByFormatName(format).hasNext())
+			throw new IOException(String.format("ImageIO can't write %s files.", format));
+
+		this.path = path;
+		this.format = format;
+		image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		data = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+	}
+
+	@Override
+	public void write(int[] pixels, int rows) throws IOException {
+		final int count = image.getWidth() * rows;
+		System.arraycopy(pixels, 0, data, written, count);
+		written += count;
+	}
+
+	@Override
+	public void close() throws IOException {
+		ImageIO.write(image, format, path.toFile());
+	}
+}
@@ -0,0 +1,313 @@
+package dmk.terrainGenerator;
+
+import java.awt.image.DataBuffer;
+import java.awt.image.IndexColorModel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * landProfiles.json compiled into flat arrays, so a pixel can be classified without touching
+ * the JSON tree or allocating. Each profile scores 1 - (|idealPosition - input| / variance)^decayCurve
+ * per channel inside its [minBound, maxBound] window and 0 outside it; the profile with the highest
+ * total wins, and a total of 0 means nothing matched. Ties go to the profile listed first.
+ * Instances are immutable; reloading the profiles compiles a new one.
+ *
+ * A profile only scores above 0 if at least one channel falls inside its window, so each
+ * channel keeps an interval index of which windows cover which stretch of the axis.
+ * classify scores only the union of those, which keeps the cost tied to how much the
+ * profiles overlap rather than how many there are.
+ *
+ * compile also bakes the classification at a tide of 0 into a BiomeTable, for a single array
+ * read per pixel away from the boundaries between profiles, and their colours into a palette indexed the same way.
+ */
+public class LandProfiles {
+	/**
+	 * Channels in the order their scores are summed.
+	 */
+	public enum Channel {
+		HEIGHT("height"), TIDE("tide"), HUMIDITY("humidity"), VOLCANIC_ACTIVITY("volcanicActivity");
+
+		private final String field;
+
+		Channel(String field) {
+			this.field = field;
+		}
+	}
+
+	private static final int CHANNELS = Channel.values().length;
+	// what TerrainGenerator draws where nothing matched, palette index 0
+	private static final int UNMATCHED_COLOR = 0xff00ff;
+
+	private final String[] names;
+	private final int[] colors;
+
+	// [channel][profile]; a channel a profile doesn't mention gets an empty window and so always scores 0
+	private final double[][] idealPosition;
+	private final double[][] variance;
+	private final double[][] decayCurve;
+	private final double[][] minBound;
+	private final double[][] maxBound;
+
+	private final int words;
+	private final AxisIndex[] index = new AxisIndex[CHANNELS];
+	private BiomeTable table;
+	private IndexColorModel palette;
+	private long hash;
+
+	/**
+	 * One channel's axis cut at every window bound into slots: odd slot 2i + 1 is exactly bounds[i],
+	 * even slot 2i is the open stretch below it. Each slot has a bitset of the profiles whose window
+	 * covers it, words longs long, profile p at bit p % 64 of word p / 64.
+	 */
+	private static class AxisIndex {
+		private final double[] bounds;
+		private final long[] masks;
+
+		AxisIndex(double[] minBound, double[] maxBound, int words) {
+			bounds = Arrays.stream(concat(minBound, maxBound))
+					.filter(Double::isFinite)
+					.sorted()
+					.distinct()
+					.toArray();
+
+			final int slots = bounds.length * 2 + 1;
+			masks = new long[slots * words];
+			for (int p = 0; p < minBound.length; ++p) {
+				if (!(minBound[p] <= maxBound[p]))
+					continue;
+
+				for (int slot = 0; slot < slots; ++slot) {
+					if (covers(slot, minBound[p], maxBound[p]))
+						masks[slot * words + (p >>> 6)] |= 1L << p;
+				}
+			}
+		}
+
+		int slot(double input) {
+			final int i = Arrays.binarySearch(bounds, input);
+			return i >= 0 ? i * 2 + 1 : -(i + 1) * 2;
+		}
+
+		private boolean covers(int slot, double min, double max) {
+			final int i = slot / 2;
+			if (slot % 2 == 1)
+				return min <= bounds[i] && bounds[i] <= max;
+
+			// no bound lies strictly inside an open slot, so its ends decide it
+			final double below = i == 0 ? Double.NEGATIVE_INFINITY : bounds[i - 1];
+			final double above = i == bounds.length ? Double.POSITIVE_INFINITY : bounds[i];
+			return min <= below && above <= max;
+		}
+
+		private static double[] concat(double[] a, double[] b) {
+			final double[] both = Arrays.copyOf(a, a.length + b.length);
+			System.arraycopy(b, 0, both, a.length, b.length);
+			return both;
+		}
+	}
+
+	private LandProfiles(int count) {
+		names = new String[count];
+		colors = new int[count];
+		idealPosition = new double[CHANNELS][count];
+		variance = new double[CHANNELS][count];
+		decayCurve = new double[CHANNELS][count];
+		minBound = new double[CHANNELS][count];
+		maxBound = new double[CHANNELS][count];
+		words = (count + 63) >>> 6;
+	}
+
+	public static LandProfiles compile(JsonNode root) {
+		final List<String> landNames = new ArrayList<>();
+		root.fieldNames().forEachRemaining(landNames::add);
+
+		final LandProfiles profiles = new LandProfiles(landNames.size());
+		profiles.hash = fnv1a(root.toString().getBytes(StandardCharsets.UTF_8));
+		for (int p = 0; p < landNames.size(); ++p) {
+			final JsonNode land = root.get(landNames.get(p));
+			profiles.names[p] = landNames.get(p);
+			profiles.colors[p] = Integer.decode(land.get("color").asText());
+
+			for (Channel channel : Channel.values()) {
+				final int c = channel.ordinal();
+				final JsonNode profile = land.get(channel.field);
+				if (profile == null) {
+					profiles.minBound[c][p] = Double.POSITIVE_INFINITY;
+					profiles.maxBound[c][p] = Double.NEGATIVE_INFINITY;
+					continue;
+				}
+
+				final double ideal = profile.get("idealPosition").asDouble();
+				final double anchor = profile.get("anchor").asDouble();
+				final double spread = profile.get("variance").asDouble();
+				profiles.idealPosition[c][p] = ideal;
+				profiles.variance[c][p] = spread;
+				profiles.decayCurve[c][p] = profile.get("decayCurve").asDouble();
+				profiles.minBound[c][p] = ideal - (spread * anchor);
+				profiles.maxBound[c][p] = ideal + (spread * (1 - anchor));
+			}
+		}
+
+		for (int c = 0; c < CHANNELS; ++c)
+			profiles.index[c] = new AxisIndex(profiles.minBound[c], profiles.maxBound[c], profiles.words);
+
+		// table ids are the profile index + 1, with 0 for nothing matched
+		if (profiles.size() < BiomeTable.MAX_LANDS) {
+			profiles.table = BiomeTable.bake((height, tide, humidity, volcanicActivity) -> profiles.classify(height, tide, humidity, volcanicActivity) + 1,
+					profiles.axis(Channel.HEIGHT, 128),
+					BiomeTable.Axis.ignored(),
+					profiles.axis(Channel.HUMIDITY, 128),
+					profiles.axis(Channel.VOLCANIC_ACTIVITY, 64));
+		}
+
+		if (profiles.size() < 256) {
+			final int[] colors = new int[profiles.size() + 1];
+			colors[0] = UNMATCHED_COLOR;
+			System.arraycopy(profiles.colors, 0, colors, 1, profiles.size());
+			profiles.palette = new IndexColorModel(8, colors.length, colors, 0, false, -1, DataBuffer.TYPE_BYTE);
+		}
+
+		return profiles;
+	}
+
+	/**
+	 * Cells for a channel's axis of the baked table, or none at all if no profile reads it.
+	 */
+	private BiomeTable.Axis axis(Channel channel, int cells) {
+		return reads(channel)
+				? BiomeTable.Axis.uniform(-1, 1, cells)
+				: BiomeTable.Axis.ignored();
+	}
+
+	/**
+	 * Whether any profile scores the channel, and so whether classify needs it at all.
+	 */
+	public boolean reads(Channel channel) {
+		return index[channel.ordinal()].bounds.length > 0;
+	}
+
+	/**
+	 * FNV-1a of the JSON the profiles were compiled from, the same from run to run; for keying what was
+	 * rendered with them.
+	 */
+	public long getHash() {
+		return hash;
+	}
+
+	private static long fnv1a(byte[] bytes) {
+		long hash = 0xcbf29ce484222325L;
+		for (byte b : bytes) {
+			hash ^= b & 0xff;
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	public int size() {
+		return names.length;
+	}
+
+	public String getName(int profile) {
+		return names[profile];
+	}
+
+	public int getColor(int profile) {
+		return colors[profile];
+	}
+
+	/**
+	 * classify baked at a tide of 0, as profile index + 1 (0 for nothing matched); null if there
+	 * are too many profiles to bake.
+	 */
+	BiomeTable getTable() {
+		return table;
+	}
+
+	/**
+	 * The colours by classify + 1, as the table's ids are; null if there are too many profiles for a byte.
+	 */
+	public IndexColorModel getPalette() {
+		return palette;
+	}
+
+	/**
+	 * Whether classify gives the same profile as other's everywhere, i.e. the two differ at most in names
+	 * and colours, so a tile drawn with other's palette only needs this one's.
+	 */
+	public boolean classifiesLike(LandProfiles other) {
+		return names.length == other.names.length
+				&& Arrays.deepEquals(idealPosition, other.idealPosition)
+				&& Arrays.deepEquals(variance, other.variance)
+				&& Arrays.deepEquals(decayCurve, other.decayCurve)
+				&& Arrays.deepEquals(minBound, other.minBound)
+				&& Arrays.deepEquals(maxBound, other.maxBound);
+	}
+
+	/**
+	 * Index of the best-scoring profile, or -1 when every profile scores 0.
+	 */
+	public int classify(double height, double tide, double humidity, double volcanicActivity) {
+		final long[] heightMasks = index[Channel.HEIGHT.ordinal()].masks;
+		final long[] tideMasks = index[Channel.TIDE.ordinal()].masks;
+		final long[] humidityMasks = index[Channel.HUMIDITY.ordinal()].masks;
+		final long[] volcanicMasks = index[Channel.VOLCANIC_ACTIVITY.ordinal()].masks;
+		final int heightSlot = index[Channel.HEIGHT.ordinal()].slot(height) * words;
+		final int tideSlot = index[Channel.TIDE.ordinal()].slot(tide) * words;
+		final int humiditySlot = index[Channel.HUMIDITY.ordinal()].slot(humidity) * words;
+		final int volcanicSlot = index[Channel.VOLCANIC_ACTIVITY.ordinal()].slot(volcanicActivity) * words;
+
+		int best = -1;
+		double bestScore = 0;
+		for (int w = 0; w < words; ++w) {
+			// candidates come out in file order, so ties still go to the first profile
+			long candidates = heightMasks[heightSlot + w] | tideMasks[tideSlot + w]
+					| humidityMasks[humiditySlot + w] | volcanicMasks[volcanicSlot + w];
+			while (candidates != 0) {
+				final int p = (w << 6) + Long.numberOfTrailingZeros(candidates);
+				candidates &= candidates - 1;
+
+				final double score = score(p, height, tide, humidity, volcanicActivity);
+				if (score > bestScore) {
+					best = p;
+					bestScore = score;
+				}
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * classify without the index, scoring every profile.
+	 */
+	int classifyExhaustive(double height, double tide, double humidity, double volcanicActivity) {
+		int best = -1;
+		double bestScore = 0;
+		for (int p = 0; p < names.length; ++p) {
+			final double score = score(p, height, tide, humidity, volcanicActivity);
+			if (score > bestScore) {
+				best = p;
+				bestScore = score;
+			}
+		}
+		return best;
+	}
+
+	private double score(int profile, double height, double tide, double humidity, double volcanicActivity) {
+		return getScore(Channel.HEIGHT, profile, height)
+				+ getScore(Channel.TIDE, profile, tide)
+				+ getScore(Channel.HUMIDITY, profile, humidity)
+				+ getScore(Channel.VOLCANIC_ACTIVITY, profile, volcanicActivity);
+	}
+
+	public double getScore(Channel channel, int profile, double input) {
+		final int c = channel.ordinal();
+		if (input < minBound[c][profile] || input > maxBound[c][profile])
+			return 0;
+
+		return 1 - Math.pow(Math.abs(idealPosition[c][profile] - input) / variance[c][profile], decayCurve[c][profile]);
+	}
+}
@@ -0,0 +1,99 @@
+package dmk.terrainGenerator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reloads a TerrainGenerator's land profiles whenever the file at its landProfilesPath (as it was when
+ * the watcher was created) changes on disk, then runs onReload. Parsing and compiling happen on the
+ * watcher's own thread, never the caller's, and the generator swaps the compiled profiles in whole,
+ * so a render sees either the old set or the new one.
+ *
+ * Editors tend to save in several writes (truncate, write, rename), so a reload waits until the file
+ * has been quiet for SETTLE_MILLIS; a save that still doesn't parse leaves the current profiles in place.
+ */
+public class LandProfilesWatcher implements Closeable {
+	static final long SETTLE_MILLIS = 150;
+
+	private final TerrainGenerator terrainGenerator;
+	private final Runnable onReload;
+	private final Path file;
+	private final WatchService watchService;
+	private final ScheduledExecutorService reloader = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "land-profiles-reload");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private ScheduledFuture<?> pending;
+
+	public LandProfilesWatcher(TerrainGenerator terrainGenerator, Runnable onReload) throws IOException {
+		this.terrainGenerator = terrainGenerator;
+		this.onReload = onReload;
+		file = terrainGenerator.getLandProfilesPath().toAbsolutePath();
+
+		// a WatchService watches directories, so watch the file's and pick out its events
+		watchService = FileSystems.getDefault().newWatchService();
+		file.getParent().register(watchService,
+				StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+		Thread watcher = new Thread(this::watch, "land-profiles-watch");
+		watcher.setDaemon(true);
+		watcher.start();
+	}
+
+	/**
+	 * Reloads now, as though the file had just changed.
+	 */
+	public void reload() {
+		schedule(0);
+	}
+
+	@Override
+	public void close() throws IOException {
+		watchService.close();
+		reloader.shutdownNow();
+	}
+
+	private void watch() {
+		try {
+			while (true) {
+				final WatchKey key = watchService.take();
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (event.kind() != StandardWatchEventKinds.OVERFLOW && file.getFileName().equals(event.context()))
+						schedule(SETTLE_MILLIS);
+				}
+				if (!key.reset())
+					return; // the directory went away
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			// closed
+		}
+	}
+
+	private synchronized void schedule(long delay) {
+		if (pending != null)
+			pending.cancel(false);
+		pending = reloader.schedule(this::load, delay, TimeUnit.MILLISECONDS);
+	}
+
+	private void load() {
+		try {
+			terrainGenerator.loadLandProfiles();
+		} catch (IOException | RuntimeException e) {
+			System.out.println(String.format("Keeping the current land profiles; %s didn't load: %s", file, e));
+			return;
+		}
+		onReload.run();
+	}
+}
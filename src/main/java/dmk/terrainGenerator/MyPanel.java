@@ -16,18 +16,19 @@ import java.awt.event.MouseMotionAdapter;
 import java.awt.event.MouseWheelEvent;
 import java.awt.event.MouseWheelListener;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.BooleanSupplier;
 
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
@@ -37,7 +38,28 @@ public class MyPanel extends JPanel {
 	@Getter
 	private class ScaledImage {
 		private final double scale;
+		// the version of the snapshot it was rendered against
+		private final long version;
 		private final BufferedImage image;
+		// what the image was coloured from, so a change of view can recolour it without regenerating; an
+		// indexed image's are emptied once it leaves the view (see shed)
+		private final TerrainGenerator.ChannelRasters rasters;
+		
+		/**
+		 * What the tile holds on to: its pixels and whatever channels have been filled in.
+		 */
+		private long getBytes() {
+			final DataBuffer buffer = image.getRaster().getDataBuffer();
+			return (long)buffer.getSize() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8 + rasters.getBytes();
+		}
+	}
+	
+	@RequiredArgsConstructor
+	private class CompressedImage {
+		private final int left, top;
+		private final double scale;
+		private final long version;
+		private final CompressedTile tile;
 	}
 	
 	private static final long serialVersionUID = 1150071354388728635L;
@@ -53,8 +75,22 @@ public class MyPanel extends JPanel {
 	private double currentScale = scale;
 	private Point mousePt;
 	private TerrainGenerator terrainGenerator;
-	private Map<Integer, Map<Integer, ScaledImage>> images;
-	private ThreadPoolExecutor es = (ThreadPoolExecutor)Executors.newFixedThreadPool(50);
+	// the generator's settings as of the last change made from here; tiles are rendered against it and
+	// cached under its version, so a tile from before a change is never taken for one from after
+	private volatile TerrainGenerator.Snapshot snapshot;
+	// the version of the snapshot before it, whose tiles show under the current ones until they're replaced
+	private volatile long previousVersion;
+	private LandProfilesWatcher landProfilesWatcher;
+	// null if it couldn't be opened, in which case every tile is rendered
+	private TileStore tileStore;
+	// tiles are kept in three tiers, each keyed by TileCache.key and snapshot version: decoded within
+	// -DtileCacheMegabytes (a quarter of the heap by default), then deflated without their rasters within
+	// -DcompressedTileCacheMegabytes (an eighth), then in the tile store on disk. A tile the view hasn't come
+	// back to is demoted a tier, and one it comes back to is promoted straight back to the first
+	private TileCache<ScaledImage> images;
+	private TileCache<CompressedImage> compressed;
+	// a thread per core, nearest the centre of the view first
+	private TileScheduler scheduler = new TileScheduler();
 	private Map<String, String> debugInfo = new LinkedHashMap<>();
 
 	public MyPanel(int windowWidth, int windowHeight) throws IOException {
@@ -71,12 +107,31 @@ public class MyPanel extends JPanel {
 		requestFocusInWindow();
 		setMousePos(new Point(0, 0));
 		terrainGenerator = new TerrainGenerator(9);
+		terrainGenerator.setQuality(TerrainGenerator.Quality.ADAPTIVE);
+		snapshot = terrainGenerator.snapshot();
+		previousVersion = snapshot.getVersion();
 //		terrainGenerator.toggle("drawColor");
-		images = new ConcurrentHashMap<>();
+		landProfilesWatcher = new LandProfilesWatcher(terrainGenerator, () -> SwingUtilities.invokeLater(this::repalette));
+		compressed = new TileCache<>(Long.getLong("compressedTileCacheMegabytes", Runtime.getRuntime().maxMemory() / 8 / (1 << 20)) << 20,
+				img -> img.tile.getBytes());
+		images = new TileCache<>(Long.getLong("tileCacheMegabytes", Runtime.getRuntime().maxMemory() / 4 / (1 << 20)) << 20,
+				ScaledImage::getBytes,
+				(key, img) -> compressed.put(key, new CompressedImage(img.rasters.getLeft(), img.rasters.getTop(), img.scale, img.version,
+						CompressedTile.of(img.image))));
+		// tiles drawn by earlier runs load from here, within -DtileStoreMegabytes (a gigabyte by default);
+		// -DtileStore=<dir> moves it
+		try {
+			tileStore = new TileStore(Paths.get(System.getProperty("tileStore",
+					Paths.get(System.getProperty("user.home"), ".terrainGenerator", "tiles").toString())),
+					Long.getLong("tileStoreMegabytes", 1024) << 20);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
 		
 		debugInfo.put("origin", String.format("(%d,%d)", origin.x, origin.y));
 		debugInfo.put("scale", String.format("%.2f", scale));
 		
+		warm(getOrderedTiles());
 		regenerate(getOrderedTiles());
 		repaint();
 		
@@ -153,8 +208,7 @@ public class MyPanel extends JPanel {
 //					terrainGenerator.toggle("drawColor");
 					final String newRenderMode = terrainGenerator.cycleRenderMode();
 					debugInfo.put("render mode", newRenderMode);
-					images.clear();
-					regenerate(getOrderedTiles());
+					resnapshot();
 //					clearOutOfBoundsImages();
 //					repaint();
 					break;
@@ -162,35 +216,50 @@ public class MyPanel extends JPanel {
 				case KeyEvent.VK_UP:
 					int incrementedSeed = terrainGenerator.incrementSeed();
 					debugInfo.put("seed", incrementedSeed + "");
-					images.clear();
-					regenerate(getOrderedTiles());
+					resnapshot();
 					break;
 				case KeyEvent.VK_DOWN:
 					int decrementedSeed = terrainGenerator.decrementSeed();
 					debugInfo.put("seed", decrementedSeed + "");
-					images.clear();
-					regenerate(getOrderedTiles());
+					resnapshot();
 					break;
 					
-				case KeyEvent.VK_R: {
-					try {
-						terrainGenerator.loadLandProfiles();
-						images.clear();
-						regenerate(getOrderedTiles());
-					} catch (IOException e1) {
-						e1.printStackTrace();
-					}
+				case KeyEvent.VK_Q: {
+					final TerrainGenerator.Quality quality = terrainGenerator.getQuality() == TerrainGenerator.Quality.EXACT
+							? TerrainGenerator.Quality.ADAPTIVE
+							: TerrainGenerator.Quality.EXACT;
+					terrainGenerator.setQuality(quality);
+					debugInfo.put("quality", quality.toString());
+					resnapshot();
 					break;
 				}
+					
+				case KeyEvent.VK_C: {
+					final TerrainGenerator.Classifier[] classifiers = TerrainGenerator.Classifier.values();
+					final TerrainGenerator.Classifier classifier = classifiers[(terrainGenerator.getClassifier().ordinal() + 1) % classifiers.length];
+					terrainGenerator.setClassifier(classifier);
+					debugInfo.put("classifier", classifier.toString());
+					resnapshot();
+					break;
+				}
+				
+				case KeyEvent.VK_V: {
+					terrainGenerator.toggle("verifyBiomeTable");
+					debugInfo.put("verifyBiomeTable", Boolean.toString(terrainGenerator.getToggle("verifyBiomeTable")));
+					resnapshot();
+					break;
+				}
+				
+				case KeyEvent.VK_R:
+					landProfilesWatcher.reload();
+					break;
 				default:break;
 				}
 				
 				if (e.getKeyCode() >= KeyEvent.VK_0 && e.getKeyCode() <= KeyEvent.VK_9) {
 					debugInfo.put("render target", (e.getKeyCode() - KeyEvent.VK_0) + "");
-					if (terrainGenerator.setRenderTarget(e.getKeyCode() - KeyEvent.VK_0)) {
-						images.clear();
-						regenerate(getOrderedTiles());
-					}
+					if (terrainGenerator.setRenderTarget(e.getKeyCode() - KeyEvent.VK_0))
+						resnapshot();
 				}
 			}
 
@@ -221,7 +290,8 @@ public class MyPanel extends JPanel {
 		if (requiresRegen) {
 			System.out.println(String.format("regen for (%d,%d)", origin.x, origin.y));
 			regenerate(getOrderedTiles());
-			clearOutOfBoundsImages();
+		} else {
+			scheduler.recentre(origin.x, origin.y);
 		}
 		
 		repaint();
@@ -232,17 +302,18 @@ public class MyPanel extends JPanel {
 		setBackground(Color.BLACK);
 		super.paintComponent(g);
 		
-		images.forEach((x, map) -> {
-			map.forEach((y, img) -> {
-				if (img.scale == scale) {
-					g.drawImage(img.image, 
-							(int)Math.floor(((x - origin.x) * currentScale) + (WINDOW_WIDTH / 2)), 
-							(int)Math.floor(((y - origin.y) * currentScale) + (WINDOW_HEIGHT / 2)),
-							(int)Math.ceil((double)IMAGE_WIDTH * (currentImageWidth/(double)IMAGE_WIDTH)),
-							(int)Math.ceil((double)IMAGE_HEIGHT * (currentImageHeight/(double)IMAGE_HEIGHT)), null);
-				}
-			});
-		});		
+		// tiles from before the last change first, so each shows until its replacement is drawn over it; any
+		// older ones would show through wherever neither has been drawn
+		final long version = snapshot.getVersion();
+		final long previous = previousVersion;
+		images.forEach((key, img) -> {
+			if (img.scale == scale && img.version == previous && previous != version)
+				drawTile(g, img);
+		});
+		images.forEach((key, img) -> {
+			if (img.scale == scale && img.version == version)
+				drawTile(g, img);
+		});
 		
 		int debugBoxWidth = 200;
 		int debugBoxHeight = (debugInfo.size() + 1) * 20;
@@ -260,6 +331,14 @@ public class MyPanel extends JPanel {
 		}
 	}
 	
+	private void drawTile(Graphics g, ScaledImage img) {
+		g.drawImage(img.image, 
+				(int)Math.floor(((img.rasters.getLeft() - origin.x) * currentScale) + (WINDOW_WIDTH / 2)), 
+				(int)Math.floor(((img.rasters.getTop() - origin.y) * currentScale) + (WINDOW_HEIGHT / 2)),
+				(int)Math.ceil((double)IMAGE_WIDTH * (currentImageWidth/(double)IMAGE_WIDTH)),
+				(int)Math.ceil((double)IMAGE_HEIGHT * (currentImageHeight/(double)IMAGE_HEIGHT)), null);
+	}
+	
 	private Rectangle getRenderBounds() {
 		int leftBound = origin.x - (WINDOW_WIDTH / 2) - (origin.x % IMAGE_WIDTH);
 		int topBound = origin.y - (WINDOW_HEIGHT / 2) - (origin.y % IMAGE_HEIGHT);
@@ -271,24 +350,52 @@ public class MyPanel extends JPanel {
 				WINDOW_HEIGHT + (IMAGE_HEIGHT * OUT_OF_BOUNDS_ROWS * 2));
 	}
 	
-	private void clearOutOfBoundsImages() {
-		int widthToCache = (IMAGE_WIDTH * OUT_OF_BOUNDS_ROWS * 5);
-		int heightToCache = (IMAGE_HEIGHT * OUT_OF_BOUNDS_ROWS * 5);
-		
-		final Rectangle renderBounds = getRenderBounds();
-		
-		images.entrySet().removeIf(e -> e.getKey() < renderBounds.x - widthToCache || e.getKey() >= renderBounds.getMaxX() + widthToCache);
-		
-		images.values().forEach(map ->
-			map.entrySet().removeIf(e -> e.getKey() < renderBounds.y - heightToCache || e.getKey() >= renderBounds.getMaxY() + heightToCache));
+	/**
+	 * The tile at (x, y) if it's cached at the current scale, rendered against snapshot.
+	 */
+	private ScaledImage cached(int x, int y, TerrainGenerator.Snapshot snapshot) {
+		final ScaledImage img = images.get(key(x, y, scale, snapshot.getVersion()));
+		return img != null && img.scale == scale && img.version == snapshot.getVersion()
+				&& img.rasters.getLeft() == x && img.rasters.getTop() == y ? img : null;
+	}
+	
+	/**
+	 * The tile at (x, y) rendered against snapshot, promoted from the compressed tier if it's there at the
+	 * current scale. Its rasters were dropped when it was compressed, so it's given rasters, which start empty
+	 * unless reused.
+	 */
+	private ScaledImage decompress(int x, int y, TerrainGenerator.Snapshot snapshot, TerrainGenerator.ChannelRasters rasters) {
+		final long key = key(x, y, scale, snapshot.getVersion());
+		final CompressedImage img = compressed.get(key);
+		if (img == null || img.scale != scale || img.version != snapshot.getVersion() || img.left != x || img.top != y
+				|| compressed.remove(key) == null)
+			return null;
+		return new ScaledImage(img.scale, img.version, img.tile.toImage(), rasters != null ? rasters
+				: terrainGenerator.createRasters(snapshot, x, y, IMAGE_WIDTH, IMAGE_HEIGHT, img.scale));
+	}
+	
+	/**
+	 * Tiles rendered against different snapshots are kept apart by mixing in the version, which is a hash
+	 * of the settings, so that going back to earlier settings finds the tiles drawn with them. That can
+	 * land two tiles on one key, so lookups check the position and version of what they find.
+	 */
+	private long key(int x, int y, double scale, long version) {
+		return TileCache.key(x, y, IMAGE_WIDTH, IMAGE_HEIGHT, scale) ^ version;
+	}
+	
+	private void showCacheInfo() {
+		debugInfo.put("renderedImages", String.format("%d (%dMB)", images.size(), images.getBytes() >> 20));
+		debugInfo.put("cache hit/miss/evict", String.format("%d/%d/%d", images.getHits(), images.getMisses(), images.getEvictions()));
+		debugInfo.put("compressedImages", String.format("%d (%dMB)", compressed.size(), compressed.getBytes() >> 20));
 	}
 	
 	private List<int[]> getOrderedTiles() {
 		List<int[]> coords = new LinkedList<>();
 		
 		final Rectangle renderBounds = getRenderBounds();
-		int centerCoordX = (int)((renderBounds.getCenterX() / IMAGE_WIDTH) * IMAGE_WIDTH);
-		int centerCoordY = (int)((renderBounds.getCenterY() / IMAGE_HEIGHT) * IMAGE_HEIGHT);
+		// on the tile grid, which the cache keys assume
+		int centerCoordX = Math.floorDiv((int)Math.floor(renderBounds.getCenterX()), IMAGE_WIDTH) * IMAGE_WIDTH;
+		int centerCoordY = Math.floorDiv((int)Math.floor(renderBounds.getCenterY()), IMAGE_HEIGHT) * IMAGE_HEIGHT;
 		
 		coords.add(new int[] {centerCoordX, centerCoordY});
 		
@@ -324,35 +431,173 @@ public class MyPanel extends JPanel {
 			coords.add(new int[] {centerCoordX + (IMAGE_WIDTH * (len / 2)), centerCoordY + (IMAGE_HEIGHT * (len / 2))});
 		}
 		
-		coords.removeIf(o -> images.containsKey(o[0]) && images.get(o[0]).containsKey(o[1]) && images.get(o[0]).get(o[1]).scale == scale);
+		final TerrainGenerator.Snapshot snapshot = this.snapshot;
+		coords.removeIf(o -> cached(o[0], o[1], snapshot) != null);
 		
 		return coords;
 	}
 	
+	/**
+	 * Schedules the tiles at coords, against the current snapshot, in place of whatever was still queued; a
+	 * tile already being rendered that isn't among them stops at its next band of rows. A tile whose rasters
+	 * are already cached from another snapshot with the same seed and quality is coloured from them, without
+	 * evaluating any noise again.
+	 */
 	private void regenerate(List<int[]> coords) {
-		es.getQueue().clear();
-
+		shed();
+		final TerrainGenerator.Snapshot snapshot = this.snapshot;
+		final double tileScale = scale;
+		final Map<Long, TerrainGenerator.ChannelRasters> reusable = new HashMap<>();
+		images.forEach((key, img) -> {
+			if (img.scale == tileScale && img.rasters.fits(snapshot))
+				reusable.put(key(img.rasters.getLeft(), img.rasters.getTop(), tileScale, 0), img.rasters);
+		});
+		
+		final List<TileScheduler.Task> tasks = new ArrayList<>();
 		for (int[] coord : coords) {
-			es.execute(new Runnable() {
-				@Override
-				public void run() {
-					if (images.containsKey(coord[0]) && images.get(coord[0]).containsKey(coord[1]) && images.get(coord[0]).get(coord[1]).scale == scale) {
-						return; // image has already been processed
-					}
-					
-					BufferedImage image = terrainGenerator.generate(coord[0], coord[1], IMAGE_WIDTH, IMAGE_HEIGHT, scale);
-					
-					images.putIfAbsent(coord[0], new ConcurrentHashMap<>());
-					images.get(coord[0]).put(coord[1], new ScaledImage(scale, image));
-					
+			final TerrainGenerator.ChannelRasters reused = reusable.get(key(coord[0], coord[1], tileScale, 0));
+			tasks.add(new TileScheduler.Task(key(coord[0], coord[1], tileScale, snapshot.getVersion()),
+					coord[0] + IMAGE_WIDTH / 2.0, coord[1] + IMAGE_HEIGHT / 2.0, cancelled -> {
+				if (cached(coord[0], coord[1], snapshot) != null) {
+					return; // image has already been processed
+				}
+				
+				final ScaledImage decompressed = decompress(coord[0], coord[1], snapshot, reused);
+				final TerrainGenerator.ChannelRasters rasters = decompressed != null ? decompressed.rasters
+						: reused != null ? reused
+						: terrainGenerator.createRasters(snapshot, coord[0], coord[1], IMAGE_WIDTH, IMAGE_HEIGHT, tileScale);
+				final BufferedImage image = decompressed != null ? decompressed.image : render(snapshot, rasters, cancelled);
+				if (image == null)
+					return; // scrolled away from
+				
+				if (arrive(snapshot, image, rasters)) {
 					repaint();
-					
-					debugInfo.put("renderedImages", "" + images.entrySet().stream()
-							.flatMap(i -> i.getValue().entrySet().stream())
-							.count());
+					showCacheInfo();
 				}
-		    });
+			}));
 		}
+		scheduler.schedule(origin.x, origin.y, tasks);
+	}
+	
+	/**
+	 * Caches a tile that's finished rendering against snapshot, unless the settings have changed since it
+	 * started, in which case it's dropped (the tile store has it if they change back). Returns whether it
+	 * was kept.
+	 */
+	boolean arrive(TerrainGenerator.Snapshot snapshot, BufferedImage image, TerrainGenerator.ChannelRasters rasters) {
+		if (snapshot.getVersion() != this.snapshot.getVersion())
+			return false;
+		images.put(key(rasters.getLeft(), rasters.getTop(), rasters.getScale(), snapshot.getVersion()),
+				new ScaledImage(rasters.getScale(), snapshot.getVersion(), image, rasters));
+		return true;
+	}
+	
+	/**
+	 * Empties the rasters of indexed tiles that have left the view, or are at another scale. Land ids are a
+	 * byte a pixel against four a channel, so a tile the view may not come back to is kept, like a compressed
+	 * one, without them; one in view keeps them, so a change of classifier or render target recolours it
+	 * without evaluating noise again.
+	 */
+	private void shed() {
+		final Rectangle renderBounds = getRenderBounds();
+		final double tileScale = scale;
+		images.forEach((key, img) -> {
+			if (img.image.getType() != BufferedImage.TYPE_BYTE_INDEXED || img.rasters.getBytes() == 0)
+				return;
+			if (img.scale == tileScale
+					&& renderBounds.intersects(img.rasters.getLeft(), img.rasters.getTop(), IMAGE_WIDTH, IMAGE_HEIGHT))
+				return;
+			images.replace(key, img, new ScaledImage(img.scale, img.version, img.image, img.rasters.empty()));
+		});
+	}
+	
+	/**
+	 * Loads whichever of the tiles at coords the tile store has into the cache before anything is scheduled,
+	 * so a start where the last run left off shows them on the first paint.
+	 */
+	private void warm(List<int[]> coords) {
+		if (tileStore == null)
+			return;
+		final TerrainGenerator.Snapshot snapshot = this.snapshot;
+		for (int[] coord : coords) {
+			try {
+				final BufferedImage stored = tileStore.get(storeKey(snapshot, coord[0], coord[1], IMAGE_WIDTH, IMAGE_HEIGHT, scale));
+				if (stored != null)
+					images.put(key(coord[0], coord[1], scale, snapshot.getVersion()), new ScaledImage(scale, snapshot.getVersion(),
+							TerrainGenerator.image(snapshot, stored),
+							terrainGenerator.createRasters(snapshot, coord[0], coord[1], IMAGE_WIDTH, IMAGE_HEIGHT, scale)));
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		showCacheInfo();
+	}
+	
+	/**
+	 * Takes a new snapshot after a change to the generator's settings and schedules the view against it.
+	 * Tiles from the old snapshot stay cached, and keep showing until their replacements are drawn.
+	 */
+	private void resnapshot() {
+		previousVersion = snapshot.getVersion();
+		snapshot = terrainGenerator.snapshot();
+		regenerate(getOrderedTiles());
+		repaint();
+	}
+	
+	/**
+	 * resnapshot for when the land profiles have been reloaded: a PROFILES tile whose lands haven't moved
+	 * takes the new palette on the spot, under the new version, and any other is rendered again.
+	 */
+	private void repalette() {
+		final TerrainGenerator.Snapshot previous = snapshot;
+		final TerrainGenerator.Snapshot current = terrainGenerator.snapshot();
+		images.forEach((key, img) -> {
+			if (img.scale != scale || img.version != previous.getVersion())
+				return;
+			final BufferedImage image = TerrainGenerator.repalette(img.image, previous, current);
+			if (image != null)
+				images.put(key(img.rasters.getLeft(), img.rasters.getTop(), img.scale, current.getVersion()),
+						new ScaledImage(img.scale, current.getVersion(), image, img.rasters));
+		});
+		previousVersion = previous.getVersion();
+		snapshot = current;
+		regenerate(getOrderedTiles());
+		repaint();
+	}
+	
+	/**
+	 * The tile as it's drawn against snapshot: from the tile store if it's been drawn that way before,
+	 * otherwise rendered from its rasters and stored. Channels a stored tile is loaded without are
+	 * evaluated if a later snapshot needs them. Null if cancelled before the render finished.
+	 */
+	private BufferedImage render(TerrainGenerator.Snapshot snapshot, TerrainGenerator.ChannelRasters rasters, BooleanSupplier cancelled) {
+		final TileStore.Key key = storeKey(snapshot, rasters.getLeft(), rasters.getTop(), rasters.getWidth(), rasters.getHeight(), rasters.getScale());
+		// a verifying render has to run to report, so it doesn't look for the tile in the store
+		if (tileStore != null && !snapshot.isVerify()) {
+			try {
+				final BufferedImage stored = tileStore.get(key);
+				if (stored != null)
+					return TerrainGenerator.image(snapshot, stored);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		
+		final BufferedImage image = terrainGenerator.render(snapshot, rasters, cancelled);
+		if (image == null)
+			return null;
+		if (tileStore != null) {
+			try {
+				tileStore.put(key, image);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		return image;
+	}
+	
+	private static TileStore.Key storeKey(TerrainGenerator.Snapshot snapshot, int left, int top, int width, int height, double scale) {
+		return new TileStore.Key(snapshot.getSeed(), scale, snapshot.getVariant(), left, top, width, height);
 	}
 	
 	private void setMousePos(Point pt) {
@@ -371,9 +616,13 @@ public class MyPanel extends JPanel {
 		redraw();
 	}
 	
+	/**
+	 * Drops every tile held in memory and draws the view again.
+	 */
 	public void redraw() {
 		images.clear();
-		regenerate(getOrderedTiles());
+		compressed.clear();
+		resnapshot();
 	}
 	
 	public String getScaleAsString() {
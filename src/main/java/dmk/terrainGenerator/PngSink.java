@@ -0,0 +1,222 @@
+package dmk.terrainGenerator;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * An 8-bit RGB PNG written strip by strip, so memory depends on the strip height rather than the image.
+ *
+ * Rows are left unfiltered: the maps are mostly runs of flat colour, which deflate matches well as they
+ * are, and in every render mode that came out smaller than choosing a filter per row.
+ *
+ * Each strip is deflated on its own, the way pigz does it: a raw deflate stream ended with a sync flush,
+ * so the blocks line up on byte boundaries and concatenate into one zlib stream. That lets strips deflate
+ * in parallel, each becoming an IDAT chunk as soon as those above it are written. The zlib header goes
+ * out first, and close adds an empty final block and the Adler-32 of all the row bytes, combined from the
+ * per-strip checksums. A strip starts without the previous one's 32 KB window, which costs a little
+ * compression at each strip boundary.
+ */
+public class PngSink implements StripSink {
+	private static final byte[] SIGNATURE = {(byte)0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+	// deflate, 32 KB window, default compression
+	private static final byte[] ZLIB_HEADER = {0x78, (byte)0x9c};
+	// a final fixed-Huffman block holding nothing but its end code
+	private static final byte[] FINAL_BLOCK = {0x03, 0x00};
+	private static final int ADLER_BASE = 65521;
+
+	private final DataOutputStream out;
+	private final int width;
+	private final int height;
+	private final int level;
+	// null to deflate on the writing thread
+	private final ExecutorService pool;
+	private final int window;
+	private final Deque<Future<Block>> inFlight = new ArrayDeque<>();
+	private int rows = 0;
+	private long adler = 1;
+
+	private static class Block {
+		private final byte[] deflated;
+		private final long adler;
+		private final long length;
+
+		private Block(byte[] deflated, long adler, long length) {
+			this.deflated = deflated;
+			this.adler = adler;
+			this.length = length;
+		}
+	}
+
+	public PngSink(Path path, int width, int height) throws IOException {
+		this(path, width, height, 1);
+	}
+
+	/**
+	 * threads strips deflate at once, and up to twice that many are held waiting; 1 deflates each strip
+	 * as it's written.
+	 */
+	public PngSink(Path path, int width, int height, int threads) throws IOException {
+		this.width = width;
+		this.height = height;
+		level = Deflater.DEFAULT_COMPRESSION;
+		pool = threads > 1
+				? Executors.newFixedThreadPool(threads, runnable -> {
+					Thread thread = new Thread(runnable, "png-deflate");
+					thread.setDaemon(true);
+					return thread;
+				})
+				: null;
+		window = threads * 2;
+
+		out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16));
+		out.write(SIGNATURE);
+
+		final ByteArrayOutputStream header = new ByteArrayOutputStream();
+		final DataOutputStream fields = new DataOutputStream(header);
+		fields.writeInt(width);
+		fields.writeInt(height);
+		fields.writeByte(8); // bits per sample
+		fields.writeByte(2); // RGB
+		fields.writeByte(0); // deflate
+		fields.writeByte(0); // the five standard filters, of which only None is used
+		fields.writeByte(0); // not interlaced
+		chunk("IHDR", header.toByteArray(), header.size());
+		chunk("IDAT", ZLIB_HEADER, ZLIB_HEADER.length);
+	}
+
+	@Override
+	public void write(int[] pixels, int rows) throws IOException {
+		if (this.rows + rows > height)
+			throw new IOException(String.format("%d rows written to a PNG %d high.", this.rows + rows, height));
+
+		final int[] strip = Arrays.copyOf(pixels, width * rows);
+		this.rows += rows;
+
+		if (pool == null) {
+			append(compress(strip, rows));
+			return;
+		}
+
+		if (inFlight.size() == window)
+			append(next());
+		inFlight.add(pool.submit(() -> compress(strip, rows)));
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			while (!inFlight.isEmpty())
+				append(next());
+
+			final byte[] end = Arrays.copyOf(FINAL_BLOCK, FINAL_BLOCK.length + 4);
+			end[2] = (byte)(adler >>> 24);
+			end[3] = (byte)(adler >>> 16);
+			end[4] = (byte)(adler >>> 8);
+			end[5] = (byte)adler;
+			chunk("IDAT", end, end.length);
+			chunk("IEND", new byte[0], 0);
+		} finally {
+			out.close();
+			if (pool != null)
+				pool.shutdownNow();
+		}
+
+		if (rows != height)
+			throw new IOException(String.format("PNG closed with %d of its %d rows written.", rows, height));
+	}
+
+	private Block next() throws IOException {
+		try {
+			return inFlight.poll().get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while deflating.", e);
+		} catch (ExecutionException e) {
+			throw new IOException("A strip failed to deflate.", e.getCause());
+		}
+	}
+
+	private void append(Block block) throws IOException {
+		chunk("IDAT", block.deflated, block.deflated.length);
+		adler = combine(adler, block.adler, block.length);
+	}
+
+	private Block compress(int[] strip, int rows) {
+		final int stride = width * 3 + 1;
+		final byte[] filtered = new byte[rows * stride];
+		for (int row = 0; row < rows; ++row) {
+			// filter type 0 (None) is already in place; the RGB bytes follow it
+			for (int x = 0; x < width; ++x) {
+				final int pixel = strip[row * width + x];
+				final int i = row * stride + 1 + x * 3;
+				filtered[i] = (byte)(pixel >> 16);
+				filtered[i + 1] = (byte)(pixel >> 8);
+				filtered[i + 2] = (byte)pixel;
+			}
+		}
+
+		final Adler32 checksum = new Adler32();
+		checksum.update(filtered);
+
+		final Deflater deflater = new Deflater(level, true);
+		final ByteArrayOutputStream deflated = new ByteArrayOutputStream(filtered.length / 4);
+		final byte[] buffer = new byte[1 << 16];
+		deflater.setInput(filtered);
+		int length;
+		do {
+			length = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+			deflated.write(buffer, 0, length);
+		} while (length == buffer.length);
+		deflater.end();
+
+		return new Block(deflated.toByteArray(), checksum.getValue(), filtered.length);
+	}
+
+	/**
+	 * The Adler-32 of two byte sequences one after the other, from each one's checksum and the second's
+	 * length; zlib's adler32_combine.
+	 */
+	static long combine(long adler1, long adler2, long length2) {
+		final long remainder = length2 % ADLER_BASE;
+		long sum1 = adler1 & 0xffff;
+		long sum2 = (remainder * sum1) % ADLER_BASE;
+		sum1 += (adler2 & 0xffff) + ADLER_BASE - 1;
+		sum2 += ((adler1 >>> 16) & 0xffff) + ((adler2 >>> 16) & 0xffff) + ADLER_BASE - remainder;
+		if (sum1 >= ADLER_BASE)
+			sum1 -= ADLER_BASE;
+		if (sum1 >= ADLER_BASE)
+			sum1 -= ADLER_BASE;
+		if (sum2 >= ADLER_BASE * 2)
+			sum2 -= ADLER_BASE * 2;
+		if (sum2 >= ADLER_BASE)
+			sum2 -= ADLER_BASE;
+		return sum1 | (sum2 << 16);
+	}
+
+	private void chunk(String type, byte[] data, int length) throws IOException {
+		final byte[] name = type.getBytes(StandardCharsets.US_ASCII);
+		final CRC32 crc = new CRC32();
+		crc.update(name);
+		crc.update(data, 0, length);
+
+		out.writeInt(length);
+		out.write(name);
+		out.write(data, 0, length);
+		out.writeInt((int)crc.getValue());
+	}
+}
@@ -0,0 +1,44 @@
+package dmk.terrainGenerator;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Binary PPM (P6): a short header and then raw RGB bytes, so strips go straight to disk and memory
+ * doesn't grow with the image.
+ */
+public class PpmSink implements StripSink {
+	private final OutputStream out;
+	private final int width;
+	private byte[] rgb = new byte[0];
+
+	public PpmSink(Path path, int width, int height) throws IOException {
+		this.width = width;
+		out = new BufferedOutputStream(Files.newOutputStream(path), 1 << 16);
+		out.write(String.format("P6\n%d %d\n255\n", width, height).getBytes(StandardCharsets.US_ASCII));
+	}
+
+	@Override
+	public void write(int[] pixels, int rows) throws IOException {
+		final int count = width * rows;
+		if (rgb.length < count * 3)
+			rgb = new byte[count * 3];
+
+		for (int i = 0; i < count; ++i) {
+			final int pixel = pixels[i];
+			rgb[i * 3] = (byte)(pixel >> 16);
+			rgb[i * 3 + 1] = (byte)(pixel >> 8);
+			rgb[i * 3 + 2] = (byte)pixel;
+		}
+		out.write(rgb, 0, count * 3);
+	}
+
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+}
@@ -0,0 +1,31 @@
+package dmk.terrainGenerator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Where a render goes strip by strip. Strips arrive top to bottom, each a whole number of full-width
+ * rows of 0xRRGGBB pixels, and a sink mustn't keep the array once write returns. close finishes the
+ * image; it is only complete once every row has been written.
+ */
+public interface StripSink extends Closeable {
+	void write(int[] pixels, int rows) throws IOException;
+
+	/**
+	 * A sink for out chosen by its extension: .png and .ppm stream, with a PNG deflating up to threads
+	 * strips at once, and anything else goes through ImageIO.
+	 */
+	static StripSink open(Path out, int width, int height, int threads) throws IOException {
+		final String name = out.getFileName().toString();
+		final String extension = name.substring(name.lastIndexOf('.') + 1).toLowerCase();
+		switch (extension) {
+		case "png":
+			return new PngSink(out, width, height, threads);
+		case "ppm":
+			return new PpmSink(out, width, height);
+		default:
+			return new ImageIOSink(out, extension, width, height);
+		}
+	}
+}
@@ -1,31 +1,77 @@
 package dmk.terrainGenerator;
 
-import java.awt.Color;
 import java.awt.image.BufferedImage;
-import java.io.File;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BooleanSupplier;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import dmk.openSimplex.Fractal;
 import dmk.openSimplex.OpenSimplex2;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
+import lombok.Setter;
 
 public class TerrainGenerator {
+	@Getter
 	private int seed;
+	private volatile Samplers samplers;
 	public TerrainGenerator(int seed) throws IOException {
 		this.seed = seed;
+		samplers = new Samplers(seed);
 		loadLandProfiles();
 	}
 	
 	private final double featureSize = 256;
-	private JsonNode profileRoot = null;
+	// bumped whenever a change alters the pixels generate produces, so tiles stored by an older build aren't reused
+	public static final int VERSION = 2;
+	// rows per band of a parallel render
+	private static final int BAND_ROWS = 64;
+	// rows a cancellable render does between asking whether it's still wanted; each band samples its own coarse
+	// lattice, so shorter bands re-sample more of it (8 rows cost ADAPTIVE 14%, 16 rows 6%)
+	private static final int CANCEL_ROWS = 16;
+	// vertical exaggeration for HILLSHADE; elevation spans [-1, 1] over hundreds of noise units
+	private static final double HILLSHADE_RELIEF = 24;
+	// light from the top-left, 45 degrees up
+	private static final double LIGHT_X = -0.5, LIGHT_Y = -0.5, LIGHT_Z = Math.sqrt(0.5);
+	@Getter
+	private volatile LandProfiles landProfiles = null;
+	
+	// where loadLandProfiles reads from; -DlandProfiles=<path> overrides the default, landProfiles.json in the
+	// working directory, and the copy bundled on the classpath stands in while that file doesn't exist
+	private static final Path DEFAULT_LAND_PROFILES = Paths.get("landProfiles.json");
+	@Getter
+	@Setter
+	private volatile Path landProfilesPath = Paths.get(System.getProperty("landProfiles", DEFAULT_LAND_PROFILES.toString()));
+	
+	private static final Land[] LANDS = Land.values();
+	// SIMPLE and RULES tiles in COLOR_ONLY are stored as Land ordinals through this
+	private static final IndexColorModel LANDS_PALETTE = new IndexColorModel(8, LANDS.length,
+			Arrays.stream(LANDS).mapToInt(Land::getColor).toArray(), 0, false, -1, DataBuffer.TYPE_BYTE);
+	// the classifiers written in code are baked once (RULES on first use); PROFILES is baked whenever landProfiles.json is loaded
+	private final BiomeTable simpleTable = BiomeTable.bake(
+			(height, tide, humidity, volcanicActivity) -> simpleLand(height / 10, humidity).ordinal(),
+			BiomeTable.Axis.discrete(-10, 10),
+			BiomeTable.Axis.ignored(),
+			BiomeTable.Axis.uniform(-1, 1, 4096),
+			BiomeTable.Axis.ignored());
+	private BiomeTable rulesTable = null;
 	
 	private final Map<String, Boolean> toggles = new HashMap<>();
 	
@@ -59,8 +105,34 @@ public class TerrainGenerator {
 		private final int color;
 	}
 	
+	/**
+	 * ADAPTIVE drops noise octaves that are finer than a pixel at the current scale,
+	 * so zoomed-out tiles render faster. EXACT evaluates every octave, and is the default
+	 * so exports match the original output; the viewer switches to ADAPTIVE.
+	 */
+	public enum Quality {
+		EXACT, ADAPTIVE
+	}
+	
+	/**
+	 * The per-pixel channels classification reads. A channel is only evaluated when the classifier, render mode
+	 * or render target needs it (see requiredLayers), and its smooth fractal inputs may be sampled on a coarse
+	 * grid and upsampled in ADAPTIVE quality.
+	 */
+	public enum Layer {
+		ELEVATION, HUMIDITY, VOLCANIC_ACTIVITY
+	}
+	
+	/**
+	 * How a pixel's channels become a land colour: getColorSimple's threshold curves,
+	 * getColor's hand-written rules, or the scored landProfiles.json.
+	 */
+	public enum Classifier {
+		SIMPLE, RULES, PROFILES
+	}
+	
 	private enum RenderMode {
-		COLOR_ONLY, NOISE_ONLY;//, OVERLAY;
+		COLOR_ONLY, NOISE_ONLY, HILLSHADE;//, OVERLAY;
 		
 		private static RenderMode[] vals = values();
 	    public RenderMode next()
@@ -69,12 +141,517 @@ public class TerrainGenerator {
 	    }
 	}
 	
-	private int renderTarget = 0;
+	/**
+	 * The six noise layers behind one getElevation-style channel, bound to consecutive seeds.
+	 * s1/s2 and l1/l2 are sampled at the same point, so they are kept as seed pairs
+	 * and evaluated with a single lattice walk.
+	 */
+	private static class ElevationLayer {
+		private final Fractal elevation;
+		private final OpenSimplex2.Sampler[] s;
+		private final Fractal elevation2;
+		private final OpenSimplex2.Sampler[] l;
+		
+		private ElevationLayer(int seed) {
+			elevation = octaves(seed, 50, 4);
+			s = new OpenSimplex2.Sampler[] {new OpenSimplex2.Sampler(seed + 1), new OpenSimplex2.Sampler(seed + 2)};
+			elevation2 = octaves(seed + 3, 200, 6);
+			l = new OpenSimplex2.Sampler[] {new OpenSimplex2.Sampler(seed + 4), new OpenSimplex2.Sampler(seed + 5)};
+		}
+	}
+	
+	/**
+	 * Every sampler generate() needs for one seed. Rebuilt as a whole when the seed changes,
+	 * so a tile that is mid-render keeps using the set it started with.
+	 */
+	private static class Samplers {
+		private final int seed;
+		private final ElevationLayer elevation;
+		private final ElevationLayer humidity;
+		private final ElevationLayer humidity2;
+		private final Fractal volcanicActivity;
+		private final Fractal volcanicActivity2;
+		
+		private Samplers(int seed) {
+			this.seed = seed;
+			elevation = new ElevationLayer(seed);
+			humidity = new ElevationLayer(seed + 1);
+			humidity2 = new ElevationLayer(seed + 2);
+			volcanicActivity = octaves(seed + 9, 1000, 1);
+			volcanicActivity2 = octaves(seed + 10, 1000, 2);
+		}
+	}
+	
+	private volatile int renderTarget = 0;
 	
-	private RenderMode renderMode = RenderMode.COLOR_ONLY;
+	private volatile RenderMode renderMode = RenderMode.COLOR_ONLY;
+	
+	@Getter
+	@Setter
+	private volatile Quality quality = Quality.EXACT;
+	
+	@Getter
+	@Setter
+	private volatile Classifier classifier = Classifier.SIMPLE;
+	
+	// largest estimated interpolation error, in noise units, allowed per layer when coarse sampling
+	private final Map<Layer, Double> errorBounds = new ConcurrentHashMap<>(Map.of(
+			Layer.ELEVATION, 0.002,
+			Layer.HUMIDITY, 0.01,
+			Layer.VOLCANIC_ACTIVITY, 0.01));
+	
+	/**
+	 * A tile's channels as float rasters, kept alongside its image so that recolouring it (another render mode,
+	 * render target or classifier) doesn't evaluate any noise again. A channel is filled the first time a render
+	 * reads it, from the seed, quality and error bounds the rasters were created with, and reused by every
+	 * render after that.
+	 */
+	public static class ChannelRasters {
+		@Getter
+		private final int left, top, width, height;
+		@Getter
+		private final double scale;
+		private final Samplers samplers;
+		// neighbouring pixels are scale apart in noise input space
+		private final double spacing;
+		private final Map<Layer, Double> errorBounds;
+		private final Map<Layer, float[]> layers = new EnumMap<>(Layer.class);
+		// elevation's d/dX, d/dY, for hillshading
+		private float[] slopeX;
+		private float[] slopeY;
+		
+		private ChannelRasters(int left, int top, int width, int height, double scale, Samplers samplers, double spacing,
+				Map<Layer, Double> errorBounds) {
+			this.left = left;
+			this.top = top;
+			this.width = width;
+			this.height = height;
+			this.scale = scale;
+			this.samplers = samplers;
+			this.spacing = spacing;
+			this.errorBounds = errorBounds;
+		}
+		
+		/**
+		 * Whether a render against snapshot can read these rasters, i.e. they were created for its seed,
+		 * quality and error bounds.
+		 */
+		public boolean fits(Snapshot snapshot) {
+			return samplers.seed == snapshot.seed && spacing == spacing(snapshot.quality, scale)
+					&& errorBounds.equals(snapshot.errorBounds);
+		}
+		
+		/**
+		 * Rasters for the same tile, seed, quality and error bounds, with nothing filled in yet.
+		 */
+		public ChannelRasters empty() {
+			return new ChannelRasters(left, top, width, height, scale, samplers, spacing, errorBounds);
+		}
+		
+		/**
+		 * Memory the channels filled so far take up.
+		 */
+		public synchronized long getBytes() {
+			final long rasters = layers.size() + (slopeX == null ? 0 : 2);
+			return rasters * width * height * Float.BYTES;
+		}
+	}
+	
+	/**
+	 * The generator's settings at one moment, for rendering against while they go on changing: the seed and
+	 * its samplers, the classifier and profiles, the quality and error bounds, and the render mode and target.
+	 * Its version is the seed mixed into getVariant, so it identifies what a tile rendered against it looks
+	 * like; two snapshots of the same settings share a version however far apart they were taken. Verifying
+	 * the baked tables changes no pixels, but it's mixed into the version too, since the tiles have to be
+	 * rendered again to report on them.
+	 */
+	public static class Snapshot {
+		@Getter
+		private final int seed;
+		private final Samplers samplers;
+		@Getter
+		private final Classifier classifier;
+		@Getter
+		private final LandProfiles landProfiles;
+		@Getter
+		private final Quality quality;
+		private final Map<Layer, Double> errorBounds;
+		private final RenderMode renderMode;
+		@Getter
+		private final int renderTarget;
+		@Getter
+		private final boolean verify;
+		@Getter
+		private final long variant;
+		@Getter
+		private final long version;
+		
+		private Snapshot(Samplers samplers, Classifier classifier, LandProfiles landProfiles, Quality quality,
+				Map<Layer, Double> errorBounds, RenderMode renderMode, int renderTarget, boolean verify) {
+			this.seed = samplers.seed;
+			this.samplers = samplers;
+			this.classifier = classifier;
+			this.landProfiles = landProfiles;
+			this.quality = quality;
+			this.errorBounds = new EnumMap<>(errorBounds);
+			this.renderMode = renderMode;
+			this.renderTarget = renderTarget;
+			this.verify = verify;
+			
+			long variant = VERSION;
+			variant = mix(variant, classifier.ordinal());
+			variant = mix(variant, classifier == Classifier.PROFILES ? landProfiles.getHash() : 0);
+			variant = mix(variant, quality.ordinal());
+			for (Layer layer : Layer.values())
+				variant = mix(variant, Double.doubleToLongBits(this.errorBounds.get(layer)));
+			variant = mix(variant, renderMode.ordinal());
+			this.variant = mix(variant, renderTarget);
+			this.version = mix(mix(this.variant, seed), verify ? 1 : 0);
+		}
+	}
+	
+	/**
+	 * Everything a render reads, fixed at the start so that every band of a parallel render sees the same.
+	 */
+	@RequiredArgsConstructor
+	private static class Pass {
+		private final ChannelRasters rasters;
+		private final Classifier classifier;
+		private final LandProfiles landProfiles;
+		private final BiomeTable table;
+		private final RenderMode renderMode;
+		private final int renderTarget;
+		// set when every colour the pass draws is a land's flat colour, and the tile is stored as land ids through it
+		private final IndexColorModel palette;
+		// the rasters this pass reads, null for channels it doesn't (which are left at 0)
+		private final float[] elevation;
+		private final float[] humidity;
+		private final float[] volcanicActivity;
+		private final float[] slopeX;
+		private final float[] slopeY;
+		// of those, the ones this pass fills
+		private final EnumSet<Layer> missing;
+		private final boolean slopeMissing;
+		// classify every pixel directly as well, and count where the table disagrees
+		private final boolean verify;
+	}
+	
+	/**
+	 * A run of rows of a parallel render, split in half until it's no more than BAND_ROWS tall.
+	 * Returns how many pixels failed verification.
+	 */
+	@RequiredArgsConstructor
+	private class Band extends RecursiveTask<Integer> {
+		private static final long serialVersionUID = -7294617114177909460L;
+		private final Pass pass;
+		private final int row, rows;
+		private final int[] pixels;
+		private final byte[] lands;
+		
+		@Override
+		protected Integer compute() {
+			if (rows <= BAND_ROWS)
+				return render(pass, row, rows, pixels, lands);
+			
+			final int split = rows / 2;
+			final Band upper = new Band(pass, row, split, pixels, lands);
+			final Band lower = new Band(pass, row + split, rows - split, pixels, lands);
+			upper.fork();
+			final int mismatches = lower.compute();
+			return mismatches + upper.join();
+		}
+	}
 	
 	public BufferedImage generate(int left, int top, int width, int height, double scale) {
-		BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		return render(createRasters(left, top, width, height, scale));
+	}
+	
+	/**
+	 * generate with the rows split into bands rendered on pool, for large one-off renders. The coarse lattices
+	 * sit on absolute coordinates and everything else is per pixel, so the image is identical to generate's.
+	 */
+	public BufferedImage generate(int left, int top, int width, int height, double scale, ForkJoinPool pool) {
+		return render(createRasters(left, top, width, height, scale), pool);
+	}
+	
+	/**
+	 * Empty rasters for a tile, bound to the current seed, quality and error bounds; render fills in what it reads.
+	 */
+	public ChannelRasters createRasters(int left, int top, int width, int height, double scale) {
+		return createRasters(snapshot(), left, top, width, height, scale);
+	}
+	
+	/**
+	 * createRasters bound to the snapshot's seed, quality and error bounds instead.
+	 */
+	public ChannelRasters createRasters(Snapshot snapshot, int left, int top, int width, int height, double scale) {
+		return new ChannelRasters(left, top, width, height, scale, snapshot.samplers, spacing(snapshot.quality, scale),
+				snapshot.errorBounds);
+	}
+	
+	private static double spacing(Quality quality, double scale) {
+		return quality == Quality.EXACT ? 0 : scale;
+	}
+	
+	/**
+	 * Colours the tile with the current classifier, render mode and render target, evaluating only the
+	 * channels they read that the rasters don't hold yet. In COLOR_ONLY every pixel is a land's flat colour,
+	 * so the image is TYPE_BYTE_INDEXED over the classifier's palette, a quarter the size of the TYPE_INT_RGB
+	 * the shaded modes need; rgb reads either back as pixels.
+	 */
+	public BufferedImage render(ChannelRasters rasters) {
+		return render(snapshot(), rasters, null, null);
+	}
+	
+	/**
+	 * render with the rows split into bands on pool, or all on this thread if pool is null.
+	 */
+	public BufferedImage render(ChannelRasters rasters, ForkJoinPool pool) {
+		return render(snapshot(), rasters, pool, null);
+	}
+	
+	/**
+	 * render against snapshot's settings rather than the current ones, a band of CANCEL_ROWS at a time, asking
+	 * cancelled between bands whether the tile is still wanted. Returns null as soon as it isn't, keeping none
+	 * of the channels filled so far. The bands come out the same as one pass over the tile would, as they do
+	 * for a parallel render. The rasters have to fit the snapshot.
+	 */
+	public BufferedImage render(Snapshot snapshot, ChannelRasters rasters, BooleanSupplier cancelled) {
+		return render(snapshot, rasters, null, cancelled);
+	}
+	
+	private BufferedImage render(Snapshot snapshot, ChannelRasters rasters, ForkJoinPool pool, BooleanSupplier cancelled) {
+		final BufferedImage img;
+		
+		// one render at a time per tile, so a channel is only ever filled once
+		synchronized (rasters) {
+			final Pass pass = begin(snapshot, rasters);
+			img = pass.palette == null
+					? new BufferedImage(rasters.width, rasters.height, BufferedImage.TYPE_INT_RGB)
+					: new BufferedImage(rasters.width, rasters.height, BufferedImage.TYPE_BYTE_INDEXED, pass.palette);
+			final int[] pixels = pass.palette == null ? ((DataBufferInt)img.getRaster().getDataBuffer()).getData() : null;
+			final byte[] lands = pass.palette == null ? null : ((DataBufferByte)img.getRaster().getDataBuffer()).getData();
+			int mismatches = 0;
+			if (pool != null) {
+				mismatches = pool.invoke(new Band(pass, 0, rasters.height, pixels, lands));
+			} else if (cancelled == null) {
+				mismatches = render(pass, 0, rasters.height, pixels, lands);
+			} else {
+				for (int row = 0; row < rasters.height; row += CANCEL_ROWS) {
+					if (cancelled.getAsBoolean())
+						return null;
+					mismatches += render(pass, row, Math.min(CANCEL_ROWS, rasters.height - row), pixels, lands);
+				}
+			}
+			
+			for (Layer layer : pass.missing)
+				rasters.layers.put(layer, raster(pass, layer));
+			if (pass.slopeMissing) {
+				rasters.slopeX = pass.slopeX;
+				rasters.slopeY = pass.slopeY;
+			}
+			
+			if (pass.verify)
+				System.out.println(String.format("%s table: %d of %d pixels differ.", pass.classifier, mismatches, rasters.width * rasters.height));
+		}
+		
+		return img;
+	}
+	
+	/**
+	 * One channel of the tile, evaluated first if no render has read it yet. The array is the one the
+	 * rasters keep, so it's for reading only.
+	 */
+	public float[] channel(ChannelRasters rasters, Layer layer) {
+		synchronized (rasters) {
+			if (!rasters.layers.containsKey(layer)) {
+				final float[] raster = new float[rasters.width * rasters.height];
+				final Snapshot snapshot = snapshot();
+				final Pass pass = new Pass(rasters, snapshot.classifier, snapshot.landProfiles, null, snapshot.renderMode, snapshot.renderTarget, null,
+						layer == Layer.ELEVATION ? raster : null, layer == Layer.HUMIDITY ? raster : null,
+						layer == Layer.VOLCANIC_ACTIVITY ? raster : null,
+						null, null, EnumSet.of(layer), false, false);
+				fill(pass, rasters.top, rasters.height, 0);
+				rasters.layers.put(layer, raster);
+			}
+			return rasters.layers.get(layer);
+		}
+	}
+	
+	private Pass begin(Snapshot snapshot, ChannelRasters rasters) {
+		final Classifier classifier = snapshot.classifier;
+		final LandProfiles landProfiles = snapshot.landProfiles;
+		final BiomeTable table = classifier == Classifier.SIMPLE ? simpleTable
+				: classifier == Classifier.RULES ? getRulesTable()
+				: landProfiles.getTable();
+		final RenderMode renderMode = snapshot.renderMode;
+		final int renderTarget = snapshot.renderTarget;
+		final IndexColorModel palette = palette(snapshot);
+		
+		final EnumSet<Layer> layers = requiredLayers(classifier, landProfiles, renderMode, renderTarget);
+		final EnumSet<Layer> missing = EnumSet.copyOf(layers);
+		missing.removeAll(rasters.layers.keySet());
+		final Map<Layer, float[]> read = new EnumMap<>(Layer.class);
+		for (Layer layer : layers)
+			read.put(layer, rasters.layers.containsKey(layer) ? rasters.layers.get(layer) : new float[rasters.width * rasters.height]);
+		
+		final boolean hillshade = renderMode == RenderMode.HILLSHADE;
+		final boolean slopeMissing = hillshade && rasters.slopeX == null;
+		final float[] slopeX = !hillshade ? null : slopeMissing ? new float[rasters.width * rasters.height] : rasters.slopeX;
+		final float[] slopeY = !hillshade ? null : slopeMissing ? new float[rasters.width * rasters.height] : rasters.slopeY;
+		
+		return new Pass(rasters, classifier, landProfiles, table, renderMode, renderTarget, palette,
+				read.get(Layer.ELEVATION), read.get(Layer.HUMIDITY), read.get(Layer.VOLCANIC_ACTIVITY),
+				slopeX, slopeY, missing, slopeMissing, snapshot.verify);
+	}
+	
+	private static float[] raster(Pass pass, Layer layer) {
+		switch (layer) {
+		case HUMIDITY:
+			return pass.humidity;
+		case VOLCANIC_ACTIVITY:
+			return pass.volcanicActivity;
+		default:
+			return pass.elevation;
+		}
+	}
+	
+	/**
+	 * The channels a pixel's colour depends on. The classifier reads its own inputs, except in NOISE_ONLY where
+	 * only the render target is drawn; the rules and profiles also shade by the render target, and hillshading
+	 * lights the elevation.
+	 */
+	private static EnumSet<Layer> requiredLayers(Classifier classifier, LandProfiles landProfiles, RenderMode renderMode, int renderTarget) {
+		final EnumSet<Layer> layers = EnumSet.noneOf(Layer.class);
+		if (classifier == Classifier.SIMPLE) {
+			// getColorSimple draws its noise from elevation and never shades
+			layers.add(Layer.ELEVATION);
+			if (renderMode != RenderMode.NOISE_ONLY)
+				layers.add(Layer.HUMIDITY);
+		} else {
+			final Layer target = renderTargetLayer(renderTarget);
+			if (target != null)
+				layers.add(target);
+			if (renderMode != RenderMode.NOISE_ONLY) {
+				if (classifier == Classifier.RULES) {
+					layers.addAll(EnumSet.allOf(Layer.class));
+				} else {
+					if (landProfiles.reads(LandProfiles.Channel.HEIGHT))
+						layers.add(Layer.ELEVATION);
+					if (landProfiles.reads(LandProfiles.Channel.HUMIDITY))
+						layers.add(Layer.HUMIDITY);
+					if (landProfiles.reads(LandProfiles.Channel.VOLCANIC_ACTIVITY))
+						layers.add(Layer.VOLCANIC_ACTIVITY);
+				}
+			}
+		}
+		
+		if (renderMode == RenderMode.HILLSHADE)
+			layers.add(Layer.ELEVATION);
+		return layers;
+	}
+	
+	/**
+	 * Renders rows row to row + rows of the pass's tile into pixels, or as land ids into lands if the pass has
+	 * a palette, filling in the channels it's missing for those rows first. Returns how many pixels failed
+	 * verification.
+	 */
+	private int render(Pass pass, int row, int rows, int[] pixels, byte[] lands) {
+		final ChannelRasters rasters = pass.rasters;
+		final Classifier classifier = pass.classifier;
+		final LandProfiles landProfiles = pass.landProfiles;
+		final BiomeTable table = pass.table;
+		final RenderMode renderMode = pass.renderMode;
+		final int renderTarget = pass.renderTarget;
+		final boolean verify = pass.verify;
+		int mismatches = 0;
+		
+		fill(pass, rasters.top + row, rows, row * rasters.width);
+		
+		final float[] elevationRaster = pass.elevation;
+		final float[] humidityRaster = pass.humidity;
+		final float[] volcanicRaster = pass.volcanicActivity;
+		for (int index = row * rasters.width; index < (row + rows) * rasters.width; ++index) {
+			// channels nothing reads this pass stay at 0
+			final double elevation = elevationRaster == null ? 0 : elevationRaster[index];
+			final double humidity = humidityRaster == null ? 0 : humidityRaster[index];
+			final double volcanicActivity = volcanicRaster == null ? 0 : volcanicRaster[index];
+			// there's no tide channel yet, so the classifiers that take one see a neutral tide
+			final double tide = 0;
+			
+			final int land = lookupLand(classifier, table, elevation, tide, humidity, volcanicActivity, renderMode);
+			if (lands != null) {
+				int id = land == BiomeTable.MIXED || verify
+						? landId(classifier, landProfiles, elevation, tide, humidity, volcanicActivity)
+						: 0;
+				if (land != BiomeTable.MIXED) {
+					if (verify && land != id)
+						mismatches++;
+					id = land;
+				}
+				lands[index] = (byte)id;
+				continue;
+			}
+			
+			int color = land == BiomeTable.MIXED || verify
+					? classify(classifier, landProfiles, elevation, tide, humidity, volcanicActivity, renderMode, renderTarget)
+					: 0;
+			if (land != BiomeTable.MIXED) {
+				final int baked = bakedColor(classifier, landProfiles, land, elevation, tide, humidity, volcanicActivity, renderMode, renderTarget);
+				if (verify && baked != color)
+					mismatches++;
+				color = baked;
+			}
+			if (renderMode == RenderMode.HILLSHADE)
+				color = hillshade(color, pass.slopeX[index], pass.slopeY[index]);
+			// what setRGB stores for TYPE_INT_RGB, without the colour model round trip
+			pixels[index] = color & 0xffffff;
+		}
+		
+		return mismatches;
+	}
+	
+	/**
+	 * Evaluates the channels the pass is missing for rows top to top + height, into its rasters from offset.
+	 */
+	private void fill(Pass pass, int top, int height, int offset) {
+		final ChannelRasters rasters = pass.rasters;
+		final Samplers samplers = rasters.samplers;
+		final double scale = rasters.scale;
+		final double spacing = rasters.spacing;
+		final int left = rasters.left;
+		final int width = rasters.width;
+		final boolean elevationMissing = pass.missing.contains(Layer.ELEVATION);
+		final boolean humidityMissing = pass.missing.contains(Layer.HUMIDITY);
+		final boolean volcanicMissing = pass.missing.contains(Layer.VOLCANIC_ACTIVITY);
+		final boolean slopeMissing = pass.slopeMissing;
+		final Map<Layer, Double> bounds = rasters.errorBounds;
+		if (!elevationMissing && !humidityMissing && !volcanicMissing && !slopeMissing)
+			return;
+		
+		final float[] pair = new float[2];
+		final float[] noiseGradient = new float[3];
+		final double[] fractalGradient = new double[2];
+		final double[] slope = new double[2];
+		
+		// the fractal inputs are smooth, so they are sampled as rasters (coarsely where the error bound allows);
+		// the hillshade slope differentiates elevation per pixel, but only the slope is taken from there, so
+		// a tile's elevation is the same whichever render mode filled it
+		final double[][] elevationNoise = elevationMissing
+				? sampleFractals(samplers.elevation, scale, spacing, bounds.get(Layer.ELEVATION), left, top, width, height)
+				: null;
+		final double[][] humidityNoise = humidityMissing
+				? sampleFractals(samplers.humidity, scale/2, spacing/2, bounds.get(Layer.HUMIDITY), left, top, width, height)
+				: null;
+		final double[][] humidity2Noise = humidityMissing
+				? sampleFractals(samplers.humidity2, scale/3, spacing/3, bounds.get(Layer.HUMIDITY), left, top, width, height)
+				: null;
+		final double[] volcanicNoise = volcanicMissing
+				? sampleFractal(samplers.volcanicActivity, scale, spacing, bounds.get(Layer.VOLCANIC_ACTIVITY), left, top, width, height)
+				: null;
+		final double[] volcanic2Noise = volcanicMissing
+				? sampleFractal(samplers.volcanicActivity2, scale, spacing, bounds.get(Layer.VOLCANIC_ACTIVITY), left, top, width, height)
+				: null;
 		
 		for (int y = top; y < top + height; ++y) {
 			for (int x = left; x < left + width; ++x) {
@@ -82,42 +659,262 @@ public class TerrainGenerator {
 				// of course reading/writing to an array requires a 0-based local position.
 				final int localX = x - left;
 				final int localY = y - top;
+				final int index = localY * width + localX;
+				
+				if (elevationMissing)
+					pass.elevation[offset + index] = (float)getElevation(samplers.elevation, scale, x, y, elevationNoise[0][index], elevationNoise[1][index], pair);
+				if (slopeMissing) {
+					getElevation(samplers.elevation, scale, spacing, x, y, noiseGradient, fractalGradient, slope);
+					pass.slopeX[offset + index] = (float)slope[0];
+					pass.slopeY[offset + index] = (float)slope[1];
+				}
+				
+				if (humidityMissing) {
+					double humidity = curveCube(getElevation(samplers.humidity, scale/2, x, y, humidityNoise[0][index], humidityNoise[1][index], pair));
+					double humidity2 = curveCube(getElevation(samplers.humidity2, scale/3, x, y, humidity2Noise[0][index], humidity2Noise[1][index], pair));
+					pass.humidity[offset + index] = (float)curveSqrt(avg(humidity, humidity2));
+				}
+				
+				if (volcanicMissing) {
+					double volcanicActivity = curveSqrt(avg(volcanicNoise[index], volcanic2Noise[index]));
+					pass.volcanicActivity[offset + index] = (float)(volcanicActivity < -0.8 ? -curveLinear((volcanicActivity + 1) * 5) : 1);
+				}
 				
 //				double tide = -curve(
 //						avg(getNoise(seed + 4, scale, 500, 7, x, y),
 //							getNoise(seed + 5, scale, 1500, 9, x, y),
 //							getNoise(seed + 11, scale, 250, 6, x, y)), 1.5);
-				
-				double elevation = getElevation(seed, scale, x, y);
-				
-				double humidity = curve(getElevation(seed + 1, scale/2, x, y), 3);
-				double humidity2 = curve(getElevation(seed + 2, scale/3, x, y), 3);
-				humidity = curve(avg(humidity, humidity2), 0.5);
-
-				double volcanicActivity = curve(
-						avg(getNoise(seed + 9, scale, 1000, 1, x, y),
-							getNoise(seed + 10, scale, 1000, 2, x, y)), 0.5);
-				volcanicActivity = volcanicActivity < -0.8 ? -curve((volcanicActivity + 1) * 5, 1) : 1;
-				
-//				int color = getColor(humidity, tide, humidity, volcanicActivity, renderMode);
-				int color = getColorSimple(elevation, humidity, volcanicActivity, renderMode);
-//				int color = chooseLand(elevation, tide, humidity, volcanicActivity, renderMode);
-				img.setRGB(localX, localY, color);
 			}
 		}
+	}
+	
+	private synchronized BiomeTable getRulesTable() {
+		// the rules' thinnest bands are 0.02 of height, 0.01 of humidity and 0.05 of volcanic activity, so
+		// every cell is narrower than those; tide is neutral until it's a channel, so it's baked at 0
+		if (rulesTable == null) {
+			rulesTable = BiomeTable.bake(
+					(height, tide, humidity, volcanicActivity) -> rulesLand(height, tide, humidity, volcanicActivity).ordinal(),
+					BiomeTable.Axis.uniform(-1, 1, 128),
+					BiomeTable.Axis.ignored(),
+					BiomeTable.Axis.uniform(-1, 1, 256),
+					BiomeTable.Axis.uniform(-1, 1, 64));
+		}
+		return rulesTable;
+	}
+	
+	private int classify(Classifier classifier, LandProfiles landProfiles, double height, double tide, double humidity, double volcanicActivity, RenderMode renderMode, int renderTarget) {
+		switch (classifier) {
+		case RULES:
+			return getColor(height, tide, humidity, volcanicActivity, renderMode, renderTarget);
+		case PROFILES:
+			return chooseLand(landProfiles, height, tide, humidity, volcanicActivity, renderMode, renderTarget);
+		default:
+			return getColorSimple(height, humidity, volcanicActivity, renderMode);
+		}
+	}
+	
+	/**
+	 * The classifier's land from its baked table, or BiomeTable.MIXED where classify has to work it out.
+	 */
+	private static int lookupLand(Classifier classifier, BiomeTable table, double height, double tide, double humidity, double volcanicActivity, RenderMode renderMode) {
+		if (table == null || renderMode == RenderMode.NOISE_ONLY)
+			return BiomeTable.MIXED;
+		return table.land(classifier == Classifier.SIMPLE ? Math.round(height * 10) : height, tide, humidity, volcanicActivity);
+	}
+	
+	/**
+	 * The id the classifier's table bakes for a pixel, which is also its index in the classifier's palette.
+	 */
+	private static int landId(Classifier classifier, LandProfiles landProfiles, double height, double tide, double humidity, double volcanicActivity) {
+		switch (classifier) {
+		case RULES:
+			return rulesLand(height, tide, humidity, volcanicActivity).ordinal();
+		case PROFILES:
+			return landProfiles.classify(height, tide, humidity, volcanicActivity) + 1;
+		default:
+			return simpleLand(round(height, 1), humidity).ordinal();
+		}
+	}
+	
+	/**
+	 * The palette a pass can store its tile through, or null if it draws colours that aren't a land's own
+	 * (shading, greyscale noise, hillshading) or has more lands than a byte holds.
+	 */
+	private static IndexColorModel palette(Snapshot snapshot) {
+		if (snapshot.renderMode != RenderMode.COLOR_ONLY)
+			return null;
+		return snapshot.classifier == Classifier.PROFILES ? snapshot.landProfiles.getPalette() : LANDS_PALETTE;
+	}
+	
+	/**
+	 * The tile as TYPE_INT_RGB pixels, without alpha, whichever way render stored it. A TYPE_INT_RGB image
+	 * gives its own array back.
+	 */
+	public static int[] rgb(BufferedImage image) {
+		final DataBuffer buffer = image.getRaster().getDataBuffer();
+		if (buffer instanceof DataBufferInt)
+			return ((DataBufferInt)buffer).getData();
 		
-		return img;
+		final int[] pixels = new int[image.getWidth() * image.getHeight()];
+		if (image.getColorModel() instanceof IndexColorModel && buffer instanceof DataBufferByte) {
+			final IndexColorModel palette = (IndexColorModel)image.getColorModel();
+			final int[] colors = new int[256];
+			palette.getRGBs(colors);
+			final byte[] lands = ((DataBufferByte)buffer).getData();
+			for (int i = 0; i < pixels.length; ++i)
+				pixels[i] = colors[lands[i] & 0xff] & 0xffffff;
+			return pixels;
+		}
+		
+		image.getRGB(0, 0, image.getWidth(), image.getHeight(), pixels, 0, image.getWidth());
+		for (int i = 0; i < pixels.length; ++i)
+			pixels[i] &= 0xffffff;
+		return pixels;
+	}
+	
+	/**
+	 * Pixels render drew earlier (from rgb) as the image a render against snapshot would draw them: indexed
+	 * if its palette holds every colour, and tells its colours apart, otherwise TYPE_INT_RGB.
+	 */
+	public static BufferedImage image(Snapshot snapshot, int[] pixels, int width, int height) {
+		final IndexColorModel palette = palette(snapshot);
+		if (palette != null) {
+			final Map<Integer, Integer> ids = new HashMap<>();
+			for (int id = 0; id < palette.getMapSize(); ++id)
+				ids.putIfAbsent(palette.getRGB(id) & 0xffffff, id);
+			
+			if (ids.size() == palette.getMapSize()) {
+				final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED, palette);
+				final byte[] lands = ((DataBufferByte)image.getRaster().getDataBuffer()).getData();
+				int i = 0;
+				for (; i < pixels.length; ++i) {
+					final Integer id = ids.get(pixels[i] & 0xffffff);
+					if (id == null)
+						break;
+					lands[i] = (byte)(int)id;
+				}
+				if (i == pixels.length)
+					return image;
+			}
+		}
+		
+		final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		System.arraycopy(pixels, 0, ((DataBufferInt)image.getRaster().getDataBuffer()).getData(), 0, pixels.length);
+		return image;
+	}
+	
+	/**
+	 * A tile read back from the tile store as the image a render against snapshot would draw: an indexed tile
+	 * over snapshot's colours keeps its land ids, under snapshot's own palette so repalette knows it, and any
+	 * other goes through image(snapshot, rgb(tile), ...).
+	 */
+	public static BufferedImage image(Snapshot snapshot, BufferedImage tile) {
+		final IndexColorModel palette = palette(snapshot);
+		if (palette != null && tile.getColorModel() instanceof IndexColorModel && tile.getRaster().getDataBuffer() instanceof DataBufferByte) {
+			final IndexColorModel stored = (IndexColorModel)tile.getColorModel();
+			final int[] colors = new int[palette.getMapSize()];
+			final int[] storedColors = new int[stored.getMapSize()];
+			palette.getRGBs(colors);
+			stored.getRGBs(storedColors);
+			if (Arrays.equals(colors, storedColors))
+				return new BufferedImage(palette, tile.getRaster(), false, null);
+		}
+		return image(snapshot, rgb(tile), tile.getWidth(), tile.getHeight());
+	}
+	
+	/**
+	 * A tile rendered against from, as rendering it against to would draw it, where that's just a change of
+	 * palette: both index PROFILES lands, to's profiles classify like from's, and nothing else differs. The
+	 * land ids are shared, not copied. Null for any other tile, which has to be rendered again.
+	 */
+	public static BufferedImage repalette(BufferedImage image, Snapshot from, Snapshot to) {
+		final IndexColorModel palette = palette(to);
+		if (palette == null || palette(from) == null || image.getColorModel() != palette(from)
+				|| from.classifier != Classifier.PROFILES || to.classifier != Classifier.PROFILES
+				|| from.seed != to.seed || from.quality != to.quality || !from.errorBounds.equals(to.errorBounds)
+				|| !to.landProfiles.classifiesLike(from.landProfiles))
+			return null;
+		return new BufferedImage(palette, image.getRaster(), false, null);
+	}
+	
+	/**
+	 * What classify returns, given the land lookupLand found.
+	 */
+	private int bakedColor(Classifier classifier, LandProfiles landProfiles, int land, double height, double tide, double humidity, double volcanicActivity, RenderMode renderMode, int renderTarget) {
+		switch (classifier) {
+		case RULES:
+			return shade(LANDS[land].color, height, tide, humidity, volcanicActivity, renderMode, renderTarget);
+		case PROFILES:
+			return shade(land == 0 ? Land.TEST_MAGENTA.color : landProfiles.getColor(land - 1), height, tide, humidity, volcanicActivity, renderMode, renderTarget);
+		default:
+			return LANDS[land].color;
+		}
+	}
+	
+	/**
+	 * A land colour darkened by the render target, unless only colour is wanted.
+	 */
+	private int shade(int color, double height, double tide, double humidity, double volcanicActivity, RenderMode renderMode, int renderTarget) {
+		return renderMode == RenderMode.COLOR_ONLY 
+				? color 
+				: manipulateColor(color, getRenderTarget(renderTarget, height, tide, humidity, volcanicActivity));
+	}
+	
+	/**
+	 * The elevation and elevation2 fractals of a layer over the tile, in that order.
+	 */
+	private double[][] sampleFractals(ElevationLayer layer, double scale, double spacing, double errorBound,
+			int left, int top, int width, int height) {
+		return new double[][] {
+			sampleFractal(layer.elevation, scale, spacing, errorBound, left, top, width, height),
+			sampleFractal(layer.elevation2, scale, spacing, errorBound, left, top, width, height)
+		};
+	}
+	
+	/**
+	 * fractal at (x * scale, y * scale) for every pixel of the tile. In ADAPTIVE quality it is evaluated on
+	 * the coarsest grid that keeps the estimated error within errorBound; otherwise at every pixel.
+	 * Either way the points go to the fractal a grid at a time, which gives the same values as one at a time.
+	 */
+	private double[] sampleFractal(Fractal fractal, double scale, double spacing, double errorBound,
+			int left, int top, int width, int height) {
+		final int step = CoarseGrid.chooseStep(fractal, spacing, errorBound);
+		final double[] out = new double[width * height];
+		CoarseGrid.sample((x0, y0, nodeStep, nodesX, nodesY, nodes) ->
+				fractal.noise(inputs(x0, nodeStep, nodesX, scale), inputs(y0, nodeStep, nodesY, scale), spacing, nodes, 0),
+				step, left, top, width, height, out);
+		return out;
+	}
+	
+	/**
+	 * The noise inputs (p0 + i * step) * scale of count pixels, as the per-pixel samplers compute them.
+	 */
+	private static double[] inputs(int p0, int step, int count, double scale) {
+		final double[] inputs = new double[count];
+		for (int i = 0; i < count; ++i)
+			inputs[i] = (p0 + i * step) * scale;
+		return inputs;
 	}
 	
-	private double getElevation(int seed, double scale, int x, int y) {
-		double elevation = curve(getNoise(seed, scale, 50, 4, x, y), 1);
-		double s1 = curve(OpenSimplex2.noise3_ImproveXY(seed+1, (x * scale) / 256, (y * scale) / 256, elevation), 1);
-		double s2 = curve(OpenSimplex2.noise3_ImproveXY(seed+2, (x * scale) / 256, (y * scale) / 256, elevation), 1);
+	public double getErrorBound(Layer layer) {
+		return errorBounds.get(layer);
+	}
+	
+	public void setErrorBound(Layer layer, double errorBound) {
+		errorBounds.put(layer, errorBound);
+	}
+	
+	private double getElevation(ElevationLayer layer, double scale, int x, int y, double elevationNoise, double elevation2Noise, float[] pair) {
+		double elevation = curveLinear(elevationNoise);
+		OpenSimplex2.noise3_ImproveXY(layer.s, (x * scale) / 256, (y * scale) / 256, elevation, pair);
+		double s1 = curveLinear(pair[0]);
+		double s2 = curveLinear(pair[1]);
 		double s = avg(s1, s2);
 		
-		double elevation2 = curve(getNoise(seed+3, scale, 200, 6, x, y), 0.5);
-		double l1 = curve(OpenSimplex2.noise3_ImproveXY(seed+4, (x * scale) / 1024, (y * scale) / 1024, elevation2), 0.5);
-		double l2 = curve(OpenSimplex2.noise3_ImproveXY(seed+5, (x * scale) / 1024, (y * scale) / 1024, elevation2), 0.5);
+		double elevation2 = curveSqrt(elevation2Noise);
+		OpenSimplex2.noise3_ImproveXY(layer.l, (x * scale) / 1024, (y * scale) / 1024, elevation2, pair);
+		double l1 = curveSqrt(pair[0]);
+		double l2 = curveSqrt(pair[1]);
 		double l = avg(l1, l2);
 		
 		double e = (avg(elevation, elevation2) + 1) * 0.5; // 0-1
@@ -125,48 +922,87 @@ public class TerrainGenerator {
 		return curve(avg(s, l), 0.75 + (e/2));
 	}
 	
-	private int chooseLand(double height, double tide, double humidity, double volcanicActivity, RenderMode renderMode) {
-		if (renderMode == RenderMode.NOISE_ONLY)
-			return 0x010101 * (int)((getRenderTarget(height, tide, humidity, volcanicActivity) + 1) * 127.5);
+	/**
+	 * getElevation, also writing its slope d/dX, d/dY to slope, where X = x * scale is the noise input.
+	 * Every layer comes with analytic derivatives, carried through curve and avg by the chain rule,
+	 * so the slope costs one extra lattice walk per seed rather than a finite-difference neighbourhood.
+	 */
+	private double getElevation(ElevationLayer layer, double scale, double spacing, int x, int y,
+			float[] noiseGradient, double[] fractalGradient, double[] slope) {
+		final double nx = x * scale;
+		final double ny = y * scale;
 		
-		Map<String, Double> scores = new HashMap<>();
+		double raw = layer.elevation.noise(nx, ny, spacing, fractalGradient, noiseGradient);
+		double elevation = curve(raw, 1);
+		double elevationX = curveSlope(raw, 1) * fractalGradient[0];
+		double elevationY = curveSlope(raw, 1) * fractalGradient[1];
 		
-		profileRoot.fieldNames().forEachRemaining(landName -> {
-			scores.put(landName, 
-					getScore(height, profileRoot.get(landName).get("height"))
-					+ getScore(tide, profileRoot.get(landName).get("tide"))
-					+ getScore(humidity, profileRoot.get(landName).get("humidity"))
-					+ getScore(volcanicActivity, profileRoot.get(landName).get("volcanicActivity")));
-		});
+		double s1 = layer.s[0].noise3_ImproveXY_Gradient(nx / 256, ny / 256, elevation, noiseGradient);
+		double s1X = curveSlope(s1, 1) * (noiseGradient[0] / 256 + noiseGradient[2] * elevationX);
+		double s1Y = curveSlope(s1, 1) * (noiseGradient[1] / 256 + noiseGradient[2] * elevationY);
+		double s2 = layer.s[1].noise3_ImproveXY_Gradient(nx / 256, ny / 256, elevation, noiseGradient);
+		double s2X = curveSlope(s2, 1) * (noiseGradient[0] / 256 + noiseGradient[2] * elevationX);
+		double s2Y = curveSlope(s2, 1) * (noiseGradient[1] / 256 + noiseGradient[2] * elevationY);
+		double s = avg(curve(s1, 1), curve(s2, 1));
 		
-		final String highestScoreLand = Collections.max(scores.entrySet(), Comparator.comparingDouble(Map.Entry::getValue)).getKey();
-		int color;
-		if (scores.get(highestScoreLand) == 0) {
-			color = Land.TEST_MAGENTA.color;
-		} else
-			color = Integer.decode(profileRoot.get(highestScoreLand).get("color").asText());
+		raw = layer.elevation2.noise(nx, ny, spacing, fractalGradient, noiseGradient);
+		double elevation2 = curve(raw, 0.5);
+		double elevation2X = curveSlope(raw, 0.5) * fractalGradient[0];
+		double elevation2Y = curveSlope(raw, 0.5) * fractalGradient[1];
 		
-		return renderMode == RenderMode.COLOR_ONLY 
-				? color 
-				: manipulateColor(color, getRenderTarget(height, tide, humidity, volcanicActivity));
-	}
-	
-	private double getScore(double input, JsonNode profile) {
-		if (profile == null)
-			return 0;
+		double l1 = layer.l[0].noise3_ImproveXY_Gradient(nx / 1024, ny / 1024, elevation2, noiseGradient);
+		double l1X = curveSlope(l1, 0.5) * (noiseGradient[0] / 1024 + noiseGradient[2] * elevation2X);
+		double l1Y = curveSlope(l1, 0.5) * (noiseGradient[1] / 1024 + noiseGradient[2] * elevation2Y);
+		double l2 = layer.l[1].noise3_ImproveXY_Gradient(nx / 1024, ny / 1024, elevation2, noiseGradient);
+		double l2X = curveSlope(l2, 0.5) * (noiseGradient[0] / 1024 + noiseGradient[2] * elevation2X);
+		double l2Y = curveSlope(l2, 0.5) * (noiseGradient[1] / 1024 + noiseGradient[2] * elevation2Y);
+		double l = avg(curve(l1, 0.5), curve(l2, 0.5));
+		
+		double e = (avg(elevation, elevation2) + 1) * 0.5; // 0-1
+		double eX = (elevationX + elevation2X) * 0.25;
+		double eY = (elevationY + elevation2Y) * 0.25;
 		
-		final double idealPosition = profile.get("idealPosition").asDouble();
-		final double anchor = profile.get("anchor").asDouble();
-		final double variance = profile.get("variance").asDouble();
-		final double decayCurve = profile.get("decayCurve").asDouble();
+		// curve(u, q) with both the input and the power varying:
+		// d/dX = curve(u, q) * ln|u| * dq/dX - q|u|^(q-1) * du/dX
+		final double u = avg(s, l);
+		final double uX = (s1X + s2X + l1X + l2X) * 0.25;
+		final double uY = (s1Y + s2Y + l1Y + l2Y) * 0.25;
+		final double q = 0.75 + (e/2);
+		final double result = curve(u, q);
+		if (u == 0) {
+			slope[0] = 0;
+			slope[1] = 0;
+		} else {
+			final double log = Math.log(Math.abs(u));
+			slope[0] = result * log * (eX / 2) + curveSlope(u, q) * uX;
+			slope[1] = result * log * (eY / 2) + curveSlope(u, q) * uY;
+		}
 		
-		final double minBound = idealPosition - (variance * anchor);
-		final double maxBound = idealPosition + (variance * (1 - anchor));
+		return result;
+	}
+	
+	/**
+	 * Lambert shading of a flat-lit colour from the elevation slope, so flat ground keeps its colour
+	 * and slopes facing the light brighten.
+	 */
+	private static int hillshade(int color, double slopeX, double slopeY) {
+		final double nx = -slopeX * HILLSHADE_RELIEF;
+		final double ny = -slopeY * HILLSHADE_RELIEF;
+		final double lambert = (nx * LIGHT_X + ny * LIGHT_Y + LIGHT_Z) / Math.sqrt(nx * nx + ny * ny + 1);
+		final double shade = Math.max(0, lambert) / LIGHT_Z;
 		
-		if (input < minBound || input > maxBound)
-			return 0;
+		final int r = (int)Math.min(255, ((color >> 16) & 0xff) * shade);
+		final int g = (int)Math.min(255, ((color >> 8) & 0xff) * shade);
+		final int b = (int)Math.min(255, (color & 0xff) * shade);
+		return (r << 16) | (g << 8) | b;
+	}
+	
+	private int chooseLand(LandProfiles landProfiles, double height, double tide, double humidity, double volcanicActivity, RenderMode renderMode, int renderTarget) {
+		if (renderMode == RenderMode.NOISE_ONLY)
+			return 0x010101 * (int)((getRenderTarget(renderTarget, height, tide, humidity, volcanicActivity) + 1) * 127.5);
 		
-		return 1 - Math.pow(Math.abs(idealPosition - input) / variance, decayCurve);
+		final int land = landProfiles.classify(height, tide, humidity, volcanicActivity);
+		return shade(land == -1 ? Land.TEST_MAGENTA.color : landProfiles.getColor(land), height, tide, humidity, volcanicActivity, renderMode, renderTarget);
 	}
 	
 	private int getColorSimple(double height, double humidity, double volcanicActivity, RenderMode renderMode) {
@@ -177,6 +1013,13 @@ public class TerrainGenerator {
 		if (renderMode == RenderMode.NOISE_ONLY)
 			return 0x010101 * (int)((height + 1) * 127.5);
 		
+		return simpleLand(height, humidity).getColor();
+	}
+	
+	/**
+	 * getColorSimple's classification, for a height already rounded to one decimal place.
+	 */
+	private static Land simpleLand(double height, double humidity) {
 //		double ocean = -1.0;
         double water = round(-0.3 * Math.pow(humidity - 1, 2) - 0.3, 1); // y=-0.3(x-1)^{2}-0.3
         double sand = round(-1 * Math.pow(humidity+1.6, -2) + 0.2, 1); // y=-1(x+1.6)^{-2}+0.2
@@ -193,44 +1036,51 @@ public class TerrainGenerator {
 		
 		if (height >= forest) {
 			if (height > sand)
-				return Land.FOREST.getColor();
+				return Land.FOREST;
 			else if (height > grass)
-				return Land.SWAMP_GRASS.getColor();
+				return Land.SWAMP_GRASS;
 			else
-				return Land.SWAMP_WATER.getColor();
+				return Land.SWAMP_WATER;
 		}
 		
 		if (height >= grass) {
 			if (height < sand)
-				return Land.MUD.getColor();
+				return Land.MUD;
 			else if (height < dirt)
-				return Land.DIRT.getColor();
+				return Land.DIRT;
 			else
-				return Land.GRASS.getColor();
+				return Land.GRASS;
 		}
 		
 		if (height >= sand) {
 			if (height < rock)
-				return Land.ROCK.getColor();
+				return Land.ROCK;
 			else
-				return Land.SAND.getColor();
+				return Land.SAND;
 		}
 		
 		if (height >= water)
-			return Land.WATER.getColor();
+			return Land.WATER;
 		
-		return Land.OCEAN.getColor();
+		return Land.OCEAN;
 	}
 	
-	private double round(double num, int dp) {
+	private static double round(double num, int dp) {
 		final double mult = Math.pow(10, dp);
 		return Math.round(num * mult) / mult;
 	}
 
-	private int getColor(double height, double tide, double humidity, double volcanicActivity, RenderMode renderMode) {
+	private int getColor(double height, double tide, double humidity, double volcanicActivity, RenderMode renderMode, int renderTarget) {
 		if (renderMode == RenderMode.NOISE_ONLY)
-			return 0x010101 * (int)((getRenderTarget(height, tide, humidity, volcanicActivity) + 1) * 127.5);
+			return 0x010101 * (int)((getRenderTarget(renderTarget, height, tide, humidity, volcanicActivity) + 1) * 127.5);
 		
+		return shade(rulesLand(height, tide, humidity, volcanicActivity).color, height, tide, humidity, volcanicActivity, renderMode, renderTarget);
+	}
+	
+	/**
+	 * getColor's classification.
+	 */
+	private static Land rulesLand(double height, double tide, double humidity, double volcanicActivity) {
 		// tide: +/-0.5
 		double scaledTide = tide / 2.0;
 		double scaledHumidity = humidity / 2.0;
@@ -323,25 +1173,47 @@ public class TerrainGenerator {
 						: Land.ROCK;
 		}
 		
-		return renderMode == RenderMode.COLOR_ONLY 
-				? land.color 
-				: manipulateColor(land.color, getRenderTarget(height, tide, humidity, volcanicActivity));
+		return land;
 	}
 	
     public static int manipulateColor(int color, double factor) {
-    	Color oldColor = new Color(color);
+    	final double darken = 255 * curveSqrt(factor);
     	
-    	int r = (int)Math.max(Math.min(oldColor.getRed() - (255 * curve(factor, 0.5)), 255), 0);
-    	int g = (int)Math.max(Math.min(oldColor.getGreen() - (255 * curve(factor, 0.5)), 255), 0);
-    	int b = (int)Math.max(Math.min(oldColor.getBlue() - (255 * curve(factor, 0.5)), 255), 0);
+    	int r = (int)Math.max(Math.min(((color >> 16) & 0xff) - darken, 255), 0);
+    	int g = (int)Math.max(Math.min(((color >> 8) & 0xff) - darken, 255), 0);
+    	int b = (int)Math.max(Math.min((color & 0xff) - darken, 255), 0);
     	
-        return new Color(r, g, b).getRGB();
+    	// opaque, as Color.getRGB gives it
+        return 0xff000000 | (r << 16) | (g << 8) | b;
     }
     
-    private double getRenderTarget(double... targets) {
-    	if (renderTarget > targets.length || renderTarget == 0)
-    		return targets[0];
-    	return targets[renderTarget - 1];
+    /**
+     * The channel getRenderTarget returns for a render target; null for tide, which is always 0.
+     */
+    private static Layer renderTargetLayer(int renderTarget) {
+    	switch (renderTarget) {
+    	case 2:
+    		return null;
+    	case 3:
+    		return Layer.HUMIDITY;
+    	case 4:
+    		return Layer.VOLCANIC_ACTIVITY;
+    	default:
+    		return Layer.ELEVATION;
+    	}
+    }
+    
+    private static double getRenderTarget(int renderTarget, double height, double tide, double humidity, double volcanicActivity) {
+    	switch (renderTarget) {
+    	case 2:
+    		return tide;
+    	case 3:
+    		return humidity;
+    	case 4:
+    		return volcanicActivity;
+    	default:
+    		return height;
+    	}
     }
     
     public boolean setRenderTarget(int target) {
@@ -351,26 +1223,54 @@ public class TerrainGenerator {
     	return true;
     }
 	
-	private static double avg(double... noises) {
-		return Arrays.stream(noises).average().orElse(0);
+	private static double avg(double a, double b) {
+		return (a + b) / 2;
+	}
+	
+	private static double avg(double a, double b, double c) {
+		return (a + b + c) / 3;
 	}
 	
 	private static double curve(double inp, double pow) {
 		return Math.pow(Math.abs(inp), pow) * (inp < 0 ? 1 : -1);
 	}
 	
-	private double getNoise(int seed, double scale, double n, int iterations, int x, int y) {
-		double nx = (x * scale) / n;
-		double ny = (y * scale) / n;
-		
-		double cumulative = 0;
-		double div = 0;
-		for (int i = 0; i < iterations; ++i) {
-			cumulative += OpenSimplex2.noise2(seed, (1 << i) * nx, (1 << i) * ny) * (1 / (double)(i+1));
-			div += 1 / (double)(i+1);
-		}
-		
-		return Math.max(-1, Math.min(1, cumulative / div));
+	/**
+	 * curve(inp, 1).
+	 */
+	private static double curveLinear(double inp) {
+		return inp < 0 ? -inp : -Math.abs(inp);
+	}
+	
+	/**
+	 * curve(inp, 0.5).
+	 */
+	private static double curveSqrt(double inp) {
+		return inp < 0 ? Math.sqrt(-inp) : -Math.sqrt(Math.abs(inp));
+	}
+	
+	/**
+	 * curve(inp, 3).
+	 */
+	private static double curveCube(double inp) {
+		return -(inp * inp * inp);
+	}
+	
+	/**
+	 * Derivative of curve with respect to inp, -pow * |inp|^(pow-1).
+	 * Taken as 0 at inp = 0 for pow < 1, where the true slope is unbounded.
+	 */
+	private static double curveSlope(double inp, double pow) {
+		if (inp == 0 && pow < 1)
+			return 0;
+		return -pow * Math.pow(Math.abs(inp), pow - 1);
+	}
+	
+	/**
+	 * Doubling frequency with 1/(i+1) weights, sampled at (x * scale) / wavelength.
+	 */
+	private static Fractal octaves(int seed, double wavelength, int iterations) {
+		return Fractal.geometric(seed, wavelength, iterations, 2, Fractal.harmonicWeights(iterations));
 	}
 	
 	public void setToggle(String toggleName, boolean toggle) {
@@ -386,24 +1286,63 @@ public class TerrainGenerator {
 		return toggles.containsKey(toggleName) && toggles.get(toggleName);
 	}
 	
+	/**
+	 * Identifies everything besides the seed, scale and position that a rendered tile's pixels depend on:
+	 * VERSION, the classifier and the profiles it reads, the quality and error bounds, and the render mode
+	 * and target. Two tiles that agree on those and the rest look the same.
+	 */
+	public long getVariant() {
+		return snapshot().getVariant();
+	}
+	
+	/**
+	 * The settings as they stand, for a render (or a run of them) that mustn't see them change part way.
+	 */
+	public Snapshot snapshot() {
+		return new Snapshot(samplers, classifier, landProfiles, quality, errorBounds, renderMode, renderTarget,
+				getToggle("verifyBiomeTable"));
+	}
+	
+	private static long mix(long hash, long value) {
+		return (hash ^ value) * 0x100000001b3L;
+	}
+	
 	public String cycleRenderMode() {
 		renderMode = renderMode.next();
 		return renderMode.toString();
 	}
 	
 	public int incrementSeed() {
-		return ++seed;
+		samplers = new Samplers(++seed);
+		return seed;
 	}
 	
 	public int decrementSeed() {
-		return --seed;
+		samplers = new Samplers(--seed);
+		return seed;
 	}
 	
+	/**
+	 * Parses and compiles landProfilesPath, then swaps the result in for renders that start afterwards;
+	 * renders already under way finish with the profiles they began with. If the file doesn't parse or
+	 * compile, the current profiles are kept. The default path falls back to the bundled landProfiles.json
+	 * until the working directory has one of its own.
+	 */
 	public void loadLandProfiles() throws IOException {
-		ObjectMapper mapper = new ObjectMapper();
-		File from = new File("/home/dan/git/terrainGenerator/landProfiles.json");
-		profileRoot = mapper.readTree(from);
-		System.out.println(profileRoot.toPrettyString());
+		final Path from = landProfilesPath;
+		if (from.equals(DEFAULT_LAND_PROFILES) && !Files.exists(from)) {
+			try (InputStream bundled = TerrainGenerator.class.getResourceAsStream("/" + DEFAULT_LAND_PROFILES)) {
+				if (bundled == null)
+					throw new IOException(String.format("No %s in the working directory or on the classpath", DEFAULT_LAND_PROFILES));
+				final LandProfiles loaded = LandProfiles.compile(new ObjectMapper().readTree(bundled));
+				landProfiles = loaded;
+				System.out.println(String.format("Loaded %d land profiles from the bundled %s.", loaded.size(), DEFAULT_LAND_PROFILES));
+			}
+			return;
+		}
+		final LandProfiles loaded = LandProfiles.compile(new ObjectMapper().readTree(from.toFile()));
+		landProfiles = loaded;
+		System.out.println(String.format("Loaded %d land profiles from %s.", loaded.size(), from));
 	}
 	
 	
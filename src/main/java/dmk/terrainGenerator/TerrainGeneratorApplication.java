@@ -3,13 +3,21 @@ package dmk.terrainGenerator;
 import java.awt.Color;
 import java.awt.Graphics;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.BiConsumer;
 
 import javax.swing.JFrame;
 import javax.swing.SwingUtilities;
 
+import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.Banner;
 import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.DefaultApplicationArguments;
 import org.springframework.boot.WebApplicationType;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.builder.SpringApplicationBuilder;
@@ -30,11 +38,16 @@ public class TerrainGeneratorApplication implements CommandLineRunner {
 	private static final int WINDOW_WIDTH = 800;
 	private static final int WINDOW_HEIGHT = 600;
 	private static final double FEATURE_SIZE = 256;
+	private static final long[] TEMPERATURE_SEEDS_4000 = {SEED + 10, SEED + 11};
+	private static final long[] TEMPERATURE_SEEDS_500 = {SEED + 12, SEED + 13};
+	private static final long[] TEMPERATURE_SEEDS_2000 = {SEED + 14, SEED + 15};
+	private static final long[] LIGHT_SEEDS_200 = {SEED + 20, SEED + 21};
 	
 	public static void main(String[] args) {
+		// --render and --pyramid never touch Swing, so it runs on machines without a display
 		ApplicationContext ctx = new SpringApplicationBuilder(TerrainGeneratorApplication.class)
 				.web(WebApplicationType.NONE)
-				.headless(false)
+				.headless(Arrays.asList(args).contains("--render") || Arrays.asList(args).contains("--pyramid"))
 				.bannerMode(Banner.Mode.OFF)
 				.run(args);
 	}
@@ -42,6 +55,15 @@ public class TerrainGeneratorApplication implements CommandLineRunner {
 	@Override
 	public void run(String... args) throws Exception {
 //		TerrainGenerator terrainGenerator = new TerrainGenerator(SEED);
+		final ApplicationArguments arguments = new DefaultApplicationArguments(args);
+		if (arguments.containsOption("render")) {
+			render(arguments);
+			return;
+		}
+		if (arguments.containsOption("pyramid")) {
+			pyramid(arguments);
+			return;
+		}
 		
 		SwingUtilities.invokeLater(() -> {
 			JFrame f = new JFrame();
@@ -68,6 +90,73 @@ public class TerrainGeneratorApplication implements CommandLineRunner {
 		});
 	}
 	
+	/**
+	 * --render --x=0 --y=0 --width=4096 --height=4096 --scale=1 --seed=9 --out=render.png, plus optionally
+	 * --classifier, --quality (EXACT by default), --threads (all cores by default) and --strip-rows.
+	 */
+	private void render(ApplicationArguments arguments) throws IOException, InterruptedException {
+		final int x = Integer.parseInt(option(arguments, "x", "0"));
+		final int y = Integer.parseInt(option(arguments, "y", "0"));
+		final int width = Integer.parseInt(option(arguments, "width", "4096"));
+		final int height = Integer.parseInt(option(arguments, "height", "4096"));
+		final double scale = Double.parseDouble(option(arguments, "scale", "1"));
+		final int threads = Integer.parseInt(option(arguments, "threads", Integer.toString(Runtime.getRuntime().availableProcessors())));
+		final int stripRows = Integer.parseInt(option(arguments, "strip-rows", Integer.toString(BatchRenderer.defaultStripRows(width))));
+		final Path out = Paths.get(option(arguments, "out", "render.png"));
+		
+		final TerrainGenerator terrainGenerator = terrainGenerator(arguments);
+		
+		final long start = System.nanoTime();
+		try (StripSink sink = StripSink.open(out, width, height, threads)) {
+			new BatchRenderer(terrainGenerator, threads).render(x, y, width, height, scale, stripRows, sink);
+		}
+		final double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.println(String.format("Rendered %dx%d to %s in %.1fs on %d threads: %,.0f pixels/s.",
+				width, height, out, seconds, threads, (double)width * height / seconds));
+	}
+	
+	/**
+	 * --pyramid --out=pyramid --x=0 --y=0 --scale=1 --seed=9 --zoom=3 --tile-size=256, plus optionally
+	 * --channels (a comma-separated list of layers), --classifier, --quality (EXACT by default) and --threads.
+	 */
+	private void pyramid(ApplicationArguments arguments) throws IOException {
+		final EnumSet<TerrainGenerator.Layer> channels = EnumSet.noneOf(TerrainGenerator.Layer.class);
+		for (String channel : option(arguments, "channels", "").split(",")) {
+			if (!channel.isBlank())
+				channels.add(TerrainGenerator.Layer.valueOf(channel.trim().toUpperCase()));
+		}
+		final TilePyramid pyramid = new TilePyramid(terrainGenerator(arguments),
+				Paths.get(option(arguments, "out", "pyramid")),
+				Integer.parseInt(option(arguments, "x", "0")),
+				Integer.parseInt(option(arguments, "y", "0")),
+				Double.parseDouble(option(arguments, "scale", "1")),
+				Integer.parseInt(option(arguments, "tile-size", "256")),
+				Integer.parseInt(option(arguments, "zoom", "3")),
+				channels);
+		
+		final int threads = Integer.parseInt(option(arguments, "threads", Integer.toString(Runtime.getRuntime().availableProcessors())));
+		final ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			pyramid.build(pool);
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	private static TerrainGenerator terrainGenerator(ApplicationArguments arguments) throws IOException {
+		final TerrainGenerator terrainGenerator = new TerrainGenerator(Integer.parseInt(option(arguments, "seed", "9")));
+		if (arguments.containsOption("classifier"))
+			terrainGenerator.setClassifier(TerrainGenerator.Classifier.valueOf(option(arguments, "classifier", null).toUpperCase()));
+		if (arguments.containsOption("quality"))
+			terrainGenerator.setQuality(TerrainGenerator.Quality.valueOf(option(arguments, "quality", null).toUpperCase()));
+		return terrainGenerator;
+	}
+	
+	private static String option(ApplicationArguments arguments, String name, String otherwise) {
+		final List<String> values = arguments.getOptionValues(name);
+		return values == null || values.isEmpty() ? otherwise : values.get(0);
+	}
+	
 	private void plot(Graphics g, int gridX, int gridY, int localX, int localY, double shade) {
 		int color = 0x010101 * (int)((shade + 1) * 127.5);
 		g.setColor(new Color(color));
@@ -133,14 +222,19 @@ public class TerrainGeneratorApplication implements CommandLineRunner {
 	private double getTemperature(int x, int y, double elevation, double light) {
 		// heat is weighted by elevation and light: 
 		// - higher light, lower elevation = higher heat; lower light, higher elevation = lower heat
-		double pass1 = OpenSimplex2.noise2(SEED + 10, (x/((double)4000 * scale)), (y/((double)4000 * scale)));
-		double pass2 = OpenSimplex2.noise2(SEED + 11, (x/((double)4000 * scale)), (y/((double)4000 * scale)));
+		// each pair shares a sample point, so both seeds come out of one lattice walk
+		float[] pair = new float[2];
+		OpenSimplex2.noise2(TEMPERATURE_SEEDS_4000, (x/((double)4000 * scale)), (y/((double)4000 * scale)), pair);
+		double pass1 = pair[0];
+		double pass2 = pair[1];
 		
-		double pass3 = OpenSimplex2.noise2(SEED + 12, (x/((double)500 * scale)), (y/((double)500 * scale)));
-		double pass4 = OpenSimplex2.noise2(SEED + 13, (x/((double)500 * scale)), (y/((double)500 * scale)));
+		OpenSimplex2.noise2(TEMPERATURE_SEEDS_500, (x/((double)500 * scale)), (y/((double)500 * scale)), pair);
+		double pass3 = pair[0];
+		double pass4 = pair[1];
 		
-		double pass5 = OpenSimplex2.noise2(SEED + 14, (x/((double)2000 * scale)), (y/((double)2000 * scale)));
-		double pass6 = OpenSimplex2.noise2(SEED + 15, (x/((double)2000 * scale)), (y/((double)2000 * scale)));
+		OpenSimplex2.noise2(TEMPERATURE_SEEDS_2000, (x/((double)2000 * scale)), (y/((double)2000 * scale)), pair);
+		double pass5 = pair[0];
+		double pass6 = pair[1];
 		
 		double tempWeighting = 0.85; // 1 means only light counts; 0 means only elevation counts
 		double avg = (pass1 + pass2 + pass3 + pass4 + pass5 + pass6) / 6 * -1;
@@ -175,8 +269,10 @@ public class TerrainGeneratorApplication implements CommandLineRunner {
 	private double getLight(int x, int y, double elevation) {
 		// light is weighted by elevation: 
 		// - higher elevation = stronger light; lower elevation = weaker light
-		double pass1 = OpenSimplex2.noise2(SEED + 20, (x/((double)200 * scale)), (y/((double)200 * scale)));
-		double pass2 = OpenSimplex2.noise2(SEED + 21, (x/((double)200 * scale)), (y/((double)200 * scale)));
+		float[] pair = new float[2];
+		OpenSimplex2.noise2(LIGHT_SEEDS_200, (x/((double)200 * scale)), (y/((double)200 * scale)), pair);
+		double pass1 = pair[0];
+		double pass2 = pair[1];
 		double pass3 = OpenSimplex2.noise2(SEED + 22, (x/((double)800 * scale)), (y/((double)800 * scale)));
 		
 		double lightWeighting = 0.85; // 1 means only light counts; 0 means only elevation counts
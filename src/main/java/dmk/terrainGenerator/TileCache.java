@@ -0,0 +1,347 @@
+package dmk.terrainGenerator;
+
+import java.util.Arrays;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * Tiles in memory under a byte budget, keyed by a long (see key) so a lookup boxes nothing.
+ *
+ * Entries sit in one open-addressed table, probed linearly and deleted by shifting the rest of the run
+ * back, so there are no tombstones to clean up. When a put would take the weight of everything held over
+ * the budget, entries are evicted by CLOCK: a hand sweeps the table, clearing the referenced bit a get
+ * or put sets and evicting the first entry it finds without one. A tile nobody has looked at since the
+ * hand last passed goes first, which is near enough least recently used without a list to keep in order.
+ *
+ * Weights are taken when an entry goes in, outside the cache's lock. Every method is synchronized, and
+ * forEach, removeIf and onEvict are called back after it's released: forEach and removeIf on a snapshot,
+ * onEvict on the thread whose put pushed the entry out, so it can hand evicted entries to another tier.
+ */
+public class TileCache<V> {
+	private static final int MIN_CAPACITY = 64;
+
+	private final long budget;
+	private final ToLongFunction<V> weigher;
+	// null if evicted entries are just dropped
+	private final Visitor<V> onEvict;
+
+	private long[] keys;
+	private Object[] values;
+	private long[] weights;
+	private boolean[] referenced;
+	private int mask;
+	private int size;
+	private long bytes;
+	private int hand;
+
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	public interface Visitor<V> {
+		void visit(long key, V value);
+	}
+
+	/**
+	 * What a put evicted, held for onEvict until the lock is released: keys and values side by side, grown as
+	 * needed. Only made once there's something to hold, so a put that evicts nothing allocates nothing.
+	 */
+	private static class Evicted {
+		private long[] keys = new long[4];
+		private Object[] values = new Object[4];
+		private int size;
+
+		private void add(long key, Object value) {
+			if (size == keys.length) {
+				keys = Arrays.copyOf(keys, size * 2);
+				values = Arrays.copyOf(values, size * 2);
+			}
+			keys[size] = key;
+			values[size] = value;
+			size++;
+		}
+	}
+
+	public TileCache(long budget, ToLongFunction<V> weigher) {
+		this(budget, weigher, null);
+	}
+
+	public TileCache(long budget, ToLongFunction<V> weigher, Visitor<V> onEvict) {
+		this.budget = budget;
+		this.weigher = weigher;
+		this.onEvict = onEvict;
+		allocate(MIN_CAPACITY);
+	}
+
+	/**
+	 * A tile's key from its top-left pixel, which is a multiple of the tile size, and its scale: 27 bits each
+	 * of column and row, and the scale's binary exponent in the 10 bits left. Scales in the same octave share
+	 * keys, so a caller that isn't only using powers of two has to check the scale of what it gets back.
+	 */
+	public static long key(int x, int y, int width, int height, double scale) {
+		final long column = Math.floorDiv(x, width) & 0x7ffffff;
+		final long row = Math.floorDiv(y, height) & 0x7ffffff;
+		return (column << 37) | (row << 10) | (Math.getExponent(scale) & 0x3ff);
+	}
+
+	public synchronized V get(long key) {
+		final int slot = find(key);
+		if (slot < 0) {
+			misses++;
+			return null;
+		}
+		hits++;
+		referenced[slot] = true;
+		return value(slot);
+	}
+
+	/**
+	 * Adds or replaces the entry for key, first evicting what it takes to stay within the budget. An entry
+	 * heavier than the whole budget still goes in, alone.
+	 */
+	public void put(long key, V value) {
+		final long weight = weigher.applyAsLong(value);
+		Evicted evicted = null;
+		synchronized (this) {
+			remove(key);
+			while (size > 0 && bytes + weight > budget)
+				evicted = evict(evicted);
+			insert(key, value, weight);
+		}
+		evicted(evicted);
+	}
+
+	/**
+	 * put, but only if key still maps to expected; false (and nothing changes) if it doesn't.
+	 */
+	public boolean replace(long key, V expected, V value) {
+		final long weight = weigher.applyAsLong(value);
+		Evicted evicted = null;
+		synchronized (this) {
+			final int slot = find(key);
+			if (slot < 0 || values[slot] != expected)
+				return false;
+			removeAt(slot);
+			while (size > 0 && bytes + weight > budget)
+				evicted = evict(evicted);
+			insert(key, value, weight);
+		}
+		evicted(evicted);
+		return true;
+	}
+
+	public synchronized V remove(long key) {
+		final int slot = find(key);
+		if (slot < 0)
+			return null;
+		final V value = value(slot);
+		removeAt(slot);
+		return value;
+	}
+
+	public void removeIf(Predicate<V> filter) {
+		final long[] keys;
+		final Object[] values;
+		synchronized (this) {
+			keys = new long[size];
+			values = new Object[size];
+			snapshot(keys, values);
+		}
+		for (int i = 0; i < keys.length; ++i) {
+			@SuppressWarnings("unchecked")
+			final V value = (V)values[i];
+			if (filter.test(value)) {
+				synchronized (this) {
+					final int slot = find(keys[i]);
+					if (slot >= 0 && this.values[slot] == value)
+						removeAt(slot);
+				}
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public void forEach(Visitor<V> visitor) {
+		final long[] keys;
+		final Object[] values;
+		synchronized (this) {
+			keys = new long[size];
+			values = new Object[size];
+			snapshot(keys, values);
+		}
+		for (int i = 0; i < keys.length; ++i)
+			visitor.visit(keys[i], (V)values[i]);
+	}
+
+	public synchronized void clear() {
+		allocate(MIN_CAPACITY);
+		size = 0;
+		bytes = 0;
+		hand = 0;
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * The weight of everything held.
+	 */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	public long getBudget() {
+		return budget;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * The slot holding key, or -1.
+	 */
+	private int find(long key) {
+		for (int slot = home(key); values[slot] != null; slot = (slot + 1) & mask) {
+			if (keys[slot] == key)
+				return slot;
+		}
+		return -1;
+	}
+
+	private void insert(long key, V value, long weight) {
+		if ((size + 1) * 2 > values.length)
+			grow();
+
+		int slot = home(key);
+		while (values[slot] != null)
+			slot = (slot + 1) & mask;
+		keys[slot] = key;
+		values[slot] = value;
+		weights[slot] = weight;
+		referenced[slot] = true;
+		size++;
+		bytes += weight;
+	}
+
+	/**
+	 * Evicts one entry, adding its key and value to evicted (made if it's null) for onEvict, if there is one.
+	 * Returns evicted.
+	 */
+	private Evicted evict(Evicted evicted) {
+		while (true) {
+			final int slot = hand;
+			hand = (hand + 1) & mask;
+			if (values[slot] == null)
+				continue;
+			if (referenced[slot]) {
+				referenced[slot] = false;
+				continue;
+			}
+			if (onEvict != null) {
+				if (evicted == null)
+					evicted = new Evicted();
+				evicted.add(keys[slot], values[slot]);
+			}
+			removeAt(slot);
+			evictions++;
+			return evicted;
+		}
+	}
+
+	/**
+	 * Empties slot, then shifts back each entry after it in the run that would otherwise no longer be
+	 * reachable from its home slot.
+	 */
+	private void removeAt(int slot) {
+		size--;
+		bytes -= weights[slot];
+		values[slot] = null;
+
+		int gap = slot;
+		for (int i = (slot + 1) & mask; values[i] != null; i = (i + 1) & mask) {
+			if (((i - home(keys[i])) & mask) >= ((i - gap) & mask)) {
+				keys[gap] = keys[i];
+				values[gap] = values[i];
+				weights[gap] = weights[i];
+				referenced[gap] = referenced[i];
+				values[i] = null;
+				gap = i;
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void evicted(Evicted evicted) {
+		if (evicted == null)
+			return;
+		for (int i = 0; i < evicted.size; ++i)
+			onEvict.visit(evicted.keys[i], (V)evicted.values[i]);
+	}
+
+	private void grow() {
+		final long[] oldKeys = keys;
+		final Object[] oldValues = values;
+		final long[] oldWeights = weights;
+		final boolean[] oldReferenced = referenced;
+		allocate(oldValues.length * 2);
+		hand = 0;
+
+		for (int i = 0; i < oldValues.length; ++i) {
+			if (oldValues[i] == null)
+				continue;
+			int slot = home(oldKeys[i]);
+			while (values[slot] != null)
+				slot = (slot + 1) & mask;
+			keys[slot] = oldKeys[i];
+			values[slot] = oldValues[i];
+			weights[slot] = oldWeights[i];
+			referenced[slot] = oldReferenced[i];
+		}
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		values = new Object[capacity];
+		weights = new long[capacity];
+		referenced = new boolean[capacity];
+		mask = capacity - 1;
+	}
+
+	private void snapshot(long[] keys, Object[] values) {
+		int i = 0;
+		for (int slot = 0; slot < this.values.length; ++slot) {
+			if (this.values[slot] != null) {
+				keys[i] = this.keys[slot];
+				values[i] = this.values[slot];
+				i++;
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private V value(int slot) {
+		return (V)values[slot];
+	}
+
+	/**
+	 * Keys are packed coordinates, so they are mixed (MurmurHash3's finalizer) before taking the low bits.
+	 */
+	private int home(long key) {
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		key ^= key >>> 33;
+		return (int)key & mask;
+	}
+}
@@ -0,0 +1,246 @@
+package dmk.terrainGenerator;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * A slippy-map z/x/y pyramid of square tiles under root. Only the deepest level, maxZoom, is rendered;
+ * it covers 2^maxZoom tiles a side starting at (left, top) at the given scale. Every tile above that is
+ * its four children downsampled: the map by the mode of each 2x2 block, so it only ever holds colours the
+ * renderer produced, and each channel by the mean.
+ *
+ * The map is z/x/y.png, and each channel z/x/y.<layer>.f32, tileSize^2 big-endian floats row by row.
+ * manifest.json records what the pyramid was built from, down to the generator's variant. A tile is only written once it's complete and a
+ * built tile is never built again, so an interrupted build picks up where it stopped, provided it's
+ * resumed with the same parameters.
+ */
+@RequiredArgsConstructor
+public class TilePyramid {
+	private final TerrainGenerator terrainGenerator;
+	private final Path root;
+	private final int left;
+	private final int top;
+	private final double scale;
+	private final int tileSize;
+	private final int maxZoom;
+	private final EnumSet<TerrainGenerator.Layer> channels;
+	private final AtomicInteger rendered = new AtomicInteger();
+	private final AtomicInteger downsampled = new AtomicInteger();
+	private final AtomicInteger skipped = new AtomicInteger();
+
+	/**
+	 * A tile and its children, children first.
+	 */
+	@RequiredArgsConstructor
+	private class Build extends RecursiveAction {
+		private static final long serialVersionUID = -1944491877619555815L;
+
+		private final int z, x, y;
+
+		@Override
+		protected void compute() {
+			try {
+				if (built(z, x, y)) {
+					skipped.incrementAndGet();
+					return;
+				}
+				if (z == maxZoom) {
+					render(x, y);
+					rendered.incrementAndGet();
+					return;
+				}
+
+				invokeAll(new Build(z + 1, x * 2, y * 2), new Build(z + 1, x * 2 + 1, y * 2),
+						new Build(z + 1, x * 2, y * 2 + 1), new Build(z + 1, x * 2 + 1, y * 2 + 1));
+				downsample(z, x, y);
+				downsampled.incrementAndGet();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	public void build(ForkJoinPool pool) throws IOException {
+		if (tileSize % 2 != 0)
+			throw new IllegalArgumentException("Tiles are downsampled in 2x2 blocks, so tileSize must be even.");
+		
+		Files.createDirectories(root);
+		final ObjectNode manifest = manifest();
+		final Path manifestPath = root.resolve("manifest.json");
+		final ObjectMapper mapper = new ObjectMapper();
+		if (Files.exists(manifestPath)) {
+			final JsonNode parameters = mapper.readTree(manifestPath.toFile());
+			((ObjectNode)parameters).remove("complete");
+			if (!parameters.equals(manifest))
+				throw new IOException(String.format("%s holds a pyramid built with other parameters.", root));
+		}
+		manifest.put("complete", false);
+		write(manifestPath, mapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(manifest));
+
+		try {
+			pool.invoke(new Build(0, 0, 0));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+
+		manifest.put("complete", true);
+		write(manifestPath, mapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(manifest));
+		System.out.println(String.format("Pyramid %s: %d tiles rendered, %d downsampled, %d already built.",
+				root, rendered.get(), downsampled.get(), skipped.get()));
+	}
+
+	private ObjectNode manifest() {
+		final ObjectNode manifest = new ObjectMapper().createObjectNode();
+		manifest.put("seed", terrainGenerator.getSeed());
+		manifest.put("classifier", terrainGenerator.getClassifier().toString());
+		manifest.put("quality", terrainGenerator.getQuality().toString());
+		// everything else that decides the colours: the land profiles, error bounds, render mode and target
+		manifest.put("variant", String.format("%016x", terrainGenerator.getVariant()));
+		manifest.put("left", left);
+		manifest.put("top", top);
+		manifest.put("scale", scale);
+		manifest.put("tileSize", tileSize);
+		manifest.put("maxZoom", maxZoom);
+		final ArrayNode layers = manifest.putArray("channels");
+		for (TerrainGenerator.Layer channel : channels)
+			layers.add(channel.toString());
+		return manifest;
+	}
+
+	private void render(int x, int y) throws IOException {
+		final TerrainGenerator.ChannelRasters rasters = terrainGenerator.createRasters(
+				left + x * tileSize, top + y * tileSize, tileSize, tileSize, scale);
+		final BufferedImage image = terrainGenerator.render(rasters);
+		// channels first: the map is what marks a tile as built
+		for (TerrainGenerator.Layer channel : channels)
+			writeChannel(maxZoom, x, y, channel, terrainGenerator.channel(rasters, channel));
+		writeMap(maxZoom, x, y, TerrainGenerator.rgb(image));
+	}
+
+	private void downsample(int z, int x, int y) throws IOException {
+		for (TerrainGenerator.Layer channel : channels) {
+			final float[] parent = new float[tileSize * tileSize];
+			for (int quadrant = 0; quadrant < 4; ++quadrant) {
+				final int dx = quadrant & 1, dy = quadrant >> 1;
+				final float[] child = readChannel(z + 1, x * 2 + dx, y * 2 + dy, channel);
+				forEachBlock(dx, dy, (index, childIndex) -> parent[index] = (child[childIndex] + child[childIndex + 1]
+						+ child[childIndex + tileSize] + child[childIndex + tileSize + 1]) / 4);
+			}
+			writeChannel(z, x, y, channel, parent);
+		}
+
+		final int[] parent = new int[tileSize * tileSize];
+		for (int quadrant = 0; quadrant < 4; ++quadrant) {
+			final int dx = quadrant & 1, dy = quadrant >> 1;
+			final int[] child = readMap(z + 1, x * 2 + dx, y * 2 + dy);
+			forEachBlock(dx, dy, (index, childIndex) -> parent[index] = mode(child[childIndex], child[childIndex + 1],
+					child[childIndex + tileSize], child[childIndex + tileSize + 1]));
+		}
+		writeMap(z, x, y, parent);
+	}
+
+	private interface BlockConsumer {
+		void accept(int index, int childIndex);
+	}
+
+	/**
+	 * For each pixel of the parent's (dx, dy) quadrant, its index and the index of the top-left of the
+	 * child's 2x2 block under it.
+	 */
+	private void forEachBlock(int dx, int dy, BlockConsumer consumer) {
+		final int half = tileSize / 2;
+		for (int j = 0; j < half; ++j) {
+			for (int i = 0; i < half; ++i)
+				consumer.accept((dy * half + j) * tileSize + dx * half + i, (j * 2) * tileSize + i * 2);
+		}
+	}
+
+	/**
+	 * The most common of four colours; among equally common ones, the first.
+	 */
+	static int mode(int a, int b, int c, int d) {
+		if (a == b || a == c || a == d)
+			return a;
+		if (b == c || b == d)
+			return b;
+		return c == d ? c : a;
+	}
+
+	private boolean built(int z, int x, int y) {
+		return Files.exists(tilePath(z, x, y, "png"));
+	}
+
+	private Path tilePath(int z, int x, int y, String extension) {
+		return root.resolve(Integer.toString(z)).resolve(Integer.toString(x)).resolve(y + "." + extension);
+	}
+
+	private void writeMap(int z, int x, int y, int[] pixels) throws IOException {
+		final Path path = tilePath(z, x, y, "png");
+		final Path partial = partial(path);
+		try (StripSink sink = new PngSink(partial, tileSize, tileSize)) {
+			sink.write(pixels, tileSize);
+		}
+		Files.move(partial, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private int[] readMap(int z, int x, int y) throws IOException {
+		final BufferedImage image = ImageIO.read(tilePath(z, x, y, "png").toFile());
+		return image.getRGB(0, 0, tileSize, tileSize, null, 0, tileSize);
+	}
+
+	private void writeChannel(int z, int x, int y, TerrainGenerator.Layer channel, float[] raster) throws IOException {
+		final Path path = tilePath(z, x, y, channelExtension(channel));
+		final Path partial = partial(path);
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(partial)))) {
+			for (float value : raster)
+				out.writeFloat(value);
+		}
+		Files.move(partial, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private float[] readChannel(int z, int x, int y, TerrainGenerator.Layer channel) throws IOException {
+		final float[] raster = new float[tileSize * tileSize];
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(tilePath(z, x, y, channelExtension(channel)))))) {
+			for (int i = 0; i < raster.length; ++i)
+				raster[i] = in.readFloat();
+		}
+		return raster;
+	}
+
+	private static String channelExtension(TerrainGenerator.Layer channel) {
+		return channel.toString().toLowerCase(Locale.ROOT) + ".f32";
+	}
+
+	private static void write(Path path, byte[] bytes) throws IOException {
+		final Path partial = partial(path);
+		Files.write(partial, bytes);
+		Files.move(partial, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private static Path partial(Path path) throws IOException {
+		Files.createDirectories(path.getParent());
+		return path.resolveSibling(path.getFileName() + ".partial");
+	}
+}
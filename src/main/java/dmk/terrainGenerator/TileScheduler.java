@@ -0,0 +1,155 @@
+package dmk.terrainGenerator;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Runs the viewer's tile work on a thread per core, nearest the centre of the view first.
+ *
+ * Each schedule starts a generation: the tiles the view now wants, replacing whatever the last one left
+ * queued. A tile already being rendered carries over if the new generation still wants it, and is
+ * otherwise cancelled; a job is handed a BooleanSupplier to poll (TerrainGenerator.render checks it
+ * between bands of rows), so a stale tile stops within a band rather than running to the end. Tasks
+ * submitted outside a generation are never dropped or cancelled, but are still re-ordered when the
+ * centre moves.
+ */
+public class TileScheduler {
+	public interface Job {
+		void run(BooleanSupplier cancelled);
+	}
+
+	/**
+	 * A tile's job, keyed as the tile cache keys it, with the point its distance is measured from.
+	 */
+	public static class Task implements Runnable {
+		private final long key;
+		private final double x, y;
+		private final Job job;
+		// -1 outside any generation
+		private volatile long generation = -1;
+		private double distance;
+		private TileScheduler scheduler;
+
+		public Task(long key, double x, double y, Job job) {
+			this.key = key;
+			this.x = x;
+			this.y = y;
+			this.job = job;
+		}
+
+		@Override
+		public void run() {
+			if (generation >= 0)
+				scheduler.running.put(key, this);
+			try {
+				// a generation is only ever raised, so an overtaken task stays cancelled
+				job.run(() -> generation >= 0 && generation < scheduler.generation);
+			} finally {
+				if (generation >= 0)
+					scheduler.running.remove(key, this);
+			}
+		}
+	}
+
+	private final ThreadPoolExecutor pool;
+	private final PriorityBlockingQueue<Runnable> queue;
+	private final Map<Long, Task> running = new ConcurrentHashMap<>();
+	private volatile long generation;
+	private double centreX, centreY;
+
+	public TileScheduler(int threads) {
+		queue = new PriorityBlockingQueue<>(64, Comparator.comparingDouble(task -> ((Task)task).distance));
+		pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, queue, runnable -> {
+			Thread thread = new Thread(runnable, "tile-render");
+			thread.setDaemon(true);
+			return thread;
+		});
+		pool.prestartAllCoreThreads();
+	}
+
+	/**
+	 * A thread per available core.
+	 */
+	public TileScheduler() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Starts a new generation of tasks around (centreX, centreY), dropping the last generation's queued
+	 * tasks and cancelling its running ones that aren't among these.
+	 */
+	public synchronized void schedule(double centreX, double centreY, List<Task> tasks) {
+		this.centreX = centreX;
+		this.centreY = centreY;
+		final long generation = this.generation + 1;
+
+		final List<Runnable> queued = new ArrayList<>();
+		queue.drainTo(queued);
+		// tasks join the new generation before it starts, so none reads as cancelled in between
+		for (Task task : tasks) {
+			final Task underWay = running.get(task.key);
+			if (underWay != null)
+				underWay.generation = generation;
+			else
+				enqueue(task, generation);
+		}
+		this.generation = generation;
+
+		// what was submitted outside a generation stays, re-ordered for the new centre
+		for (Runnable runnable : queued) {
+			final Task task = (Task)runnable;
+			if (task.generation < 0)
+				enqueue(task, -1);
+		}
+	}
+
+	/**
+	 * Re-orders what's queued by distance from a new centre, within the same generation.
+	 */
+	public synchronized void recentre(double centreX, double centreY) {
+		this.centreX = centreX;
+		this.centreY = centreY;
+
+		final List<Runnable> queued = new ArrayList<>();
+		queue.drainTo(queued);
+		for (Runnable runnable : queued) {
+			final Task task = (Task)runnable;
+			enqueue(task, task.generation);
+		}
+	}
+
+	/**
+	 * Queues a task that no generation drops or cancels, such as recolouring a tile that is already shown.
+	 */
+	public synchronized void submit(Task task) {
+		enqueue(task, -1);
+	}
+
+	private void enqueue(Task task, long generation) {
+		task.scheduler = this;
+		task.generation = generation;
+		task.distance = Math.hypot(task.x - centreX, task.y - centreY);
+		pool.execute(task);
+	}
+
+	/**
+	 * Tasks waiting for a thread.
+	 */
+	public int getQueued() {
+		return queue.size();
+	}
+
+	/**
+	 * Tasks being run right now.
+	 */
+	public int getActive() {
+		return pool.getActiveCount();
+	}
+}
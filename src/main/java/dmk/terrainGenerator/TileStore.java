@@ -0,0 +1,348 @@
+package dmk.terrainGenerator;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Rendered tiles kept on disk between runs, so revisiting somewhere, or starting up where the last run
+ * left off, reads pixels back instead of evaluating noise.
+ *
+ * Tiles are grouped by everything but their position, (seed, scale, TerrainGenerator.getVariant, tile
+ * size), into a directory each, and within that into region files of REGION x REGION tiles. A region file
+ * is memory-mapped whole: a HEADER_BYTES header holding a magic number, the tile size, the kind of tile
+ * and one flag per slot, then a fixed-size slot per tile in row-major order, so an absent tile costs no
+ * disk (the file is sparse). A region made by putting a palette-indexed tile holds indexed tiles, each its
+ * palette and a land id a pixel, a quarter the size of an RGB slot; any other holds 0xRRGGBB pixels. A
+ * slot's flag is set only once its pixels are in, and both readers and writers hold a lock on the flag
+ * while they touch the slot, so viewers in other processes can share a store.
+ *
+ * The store keeps within a budget of bytes, counting each region file at its full size, holes and all.
+ * Opening a region marks it as used, and whenever the store opens or starts a new region file it deletes
+ * the least recently used ones until the rest fit. A region another process still has open carries on
+ * there unaffected, but what it writes afterwards is lost.
+ */
+public class TileStore implements Closeable {
+	private static final int MAGIC = 0x54494c32; // "TIL2"
+	private static final int REGION = 16;
+	private static final int HEADER_BYTES = 4096;
+	private static final int RGB = 0, INDEXED = 1;
+	// an indexed slot's palette: its size, then up to 256 colours
+	private static final int PALETTE_BYTES = 4 + 256 * 4;
+	// regions kept mapped at once
+	private static final int OPEN_REGIONS = 32;
+	// one JVM can't hold overlapping file locks, even through separate channels, so every store in it takes
+	// turns at a region file, by its absolute path, while it holds any lock on it
+	private static final ConcurrentMap<Path, Object> FILE_LOCKS = new ConcurrentHashMap<>();
+
+	private final Path root;
+	private final long budget;
+	private final Map<Path, Region> regions = new LinkedHashMap<>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Path, Region> eldest) {
+			if (size() <= OPEN_REGIONS)
+				return false;
+			eldest.getValue().close();
+			return true;
+		}
+	};
+
+	/**
+	 * A tile by its top-left pixel (a multiple of the tile size) and what it was rendered with.
+	 */
+	public static class Key {
+		private final int seed;
+		private final double scale;
+		private final long variant;
+		private final int x, y;
+		private final int width, height;
+
+		public Key(int seed, double scale, long variant, int x, int y, int width, int height) {
+			this.seed = seed;
+			this.scale = scale;
+			this.variant = variant;
+			this.x = x;
+			this.y = y;
+			this.width = width;
+			this.height = height;
+		}
+
+		private String group() {
+			return String.format("%d_%x_%016x_%dx%d", seed, Double.doubleToLongBits(scale), variant, width, height);
+		}
+	}
+
+	private static class Region {
+		private final Object lock;
+		private final FileChannel channel;
+		private final MappedByteBuffer buffer;
+		private final int width, height;
+		private final int kind;
+		private final int slotBytes;
+
+		/**
+		 * The region file at path, made for tiles of newKind if it's new (or cut short).
+		 */
+		private Region(Path path, int width, int height, int newKind) throws IOException {
+			this.lock = FILE_LOCKS.computeIfAbsent(path.toAbsolutePath().normalize(), absolute -> new Object());
+			this.width = width;
+			this.height = height;
+			channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			int kind = newKind;
+			synchronized (lock) {
+				final FileLock header = channel.lock(0, HEADER_BYTES, false);
+				try {
+					final ByteBuffer existing = ByteBuffer.allocate(16);
+					if (channel.size() >= HEADER_BYTES && channel.read(existing, 0) == 16 && existing.getInt(0) == MAGIC
+							&& existing.getInt(12) >= RGB && existing.getInt(12) <= INDEXED
+							&& channel.size() >= size(width, height, existing.getInt(12))) {
+						kind = existing.getInt(12);
+					} else {
+						// new, cut short or from an older store: start it over, leaving the slots as holes
+						channel.truncate(0);
+						final ByteBuffer start = ByteBuffer.allocate(16);
+						start.putInt(MAGIC).putInt(width).putInt(height).putInt(kind).flip();
+						channel.write(start, 0);
+						channel.write(ByteBuffer.allocate(1), size(width, height, kind) - 1);
+					}
+				} finally {
+					header.release();
+				}
+			}
+			this.kind = kind;
+			slotBytes = slotBytes(width, height, kind);
+			buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size(width, height, kind));
+			if (buffer.getInt(4) != width || buffer.getInt(8) != height)
+				throw new IOException(String.format("%s isn't a region of %dx%d tiles.", path, width, height));
+		}
+
+		private static int slotBytes(int width, int height, int kind) {
+			// indexed slots are kept to whole ints, so every palette starts aligned
+			return kind == INDEXED ? (PALETTE_BYTES + width * height + 3) & ~3 : width * height * 4;
+		}
+
+		private static long size(int width, int height, int kind) {
+			return HEADER_BYTES + (long)REGION * REGION * slotBytes(width, height, kind);
+		}
+
+		/**
+		 * The tile in slot, TYPE_BYTE_INDEXED over its palette in an indexed region, otherwise TYPE_INT_RGB.
+		 * Null if nothing has been put there, or the region has been closed.
+		 */
+		private BufferedImage get(int slot) throws IOException {
+			synchronized (lock) {
+				if (!channel.isOpen())
+					return null;
+				final FileLock flagLock = channel.lock(flag(slot), 4, true);
+				try {
+					if (buffer.getInt(flag(slot)) == 0)
+						return null;
+					final ByteBuffer tile = slice(slot);
+					if (kind == INDEXED) {
+						final int[] colours = new int[tile.getInt()];
+						tile.asIntBuffer().get(colours);
+						final IndexColorModel palette = new IndexColorModel(8, colours.length, colours, 0, false, -1, DataBuffer.TYPE_BYTE);
+						final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED, palette);
+						tile.position(PALETTE_BYTES);
+						tile.get(((DataBufferByte)image.getRaster().getDataBuffer()).getData());
+						return image;
+					}
+					final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+					tile.asIntBuffer().get(((DataBufferInt)image.getRaster().getDataBuffer()).getData());
+					return image;
+				} finally {
+					flagLock.release();
+				}
+			}
+		}
+
+		/**
+		 * Puts the tile into slot, as land ids and its palette in an indexed region, which only an indexed
+		 * tile goes into, and as pixels in any other. False if it didn't go in.
+		 */
+		private boolean put(int slot, BufferedImage image) throws IOException {
+			final boolean indexed = image.getColorModel() instanceof IndexColorModel
+					&& image.getRaster().getDataBuffer() instanceof DataBufferByte;
+			if (kind == INDEXED && !indexed)
+				return false;
+			synchronized (lock) {
+				if (!channel.isOpen())
+					return false;
+				final FileLock flagLock = channel.lock(flag(slot), 4, false);
+				try {
+					final ByteBuffer tile = slice(slot);
+					if (kind == INDEXED) {
+						final IndexColorModel palette = (IndexColorModel)image.getColorModel();
+						final int[] colours = new int[palette.getMapSize()];
+						palette.getRGBs(colours);
+						tile.putInt(colours.length);
+						tile.asIntBuffer().put(colours);
+						tile.position(PALETTE_BYTES);
+						tile.put(((DataBufferByte)image.getRaster().getDataBuffer()).getData(), 0, width * height);
+					} else {
+						tile.asIntBuffer().put(TerrainGenerator.rgb(image), 0, width * height);
+					}
+					buffer.putInt(flag(slot), 1);
+					return true;
+				} finally {
+					flagLock.release();
+				}
+			}
+		}
+
+		private ByteBuffer slice(int slot) {
+			return buffer.duplicate()
+					.position(HEADER_BYTES + slot * slotBytes)
+					.limit(HEADER_BYTES + (slot + 1) * slotBytes)
+					.slice();
+		}
+
+		private static int flag(int slot) {
+			return 16 + slot * 4;
+		}
+
+		private void close() {
+			synchronized (lock) {
+				try {
+					channel.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * The store under root, pruned to budget bytes.
+	 */
+	public TileStore(Path root, long budget) throws IOException {
+		this.root = root;
+		this.budget = budget;
+		Files.createDirectories(root);
+		synchronized (regions) {
+			prune(0);
+		}
+	}
+
+	/**
+	 * The tile, TYPE_BYTE_INDEXED over the palette it was put with if it was put into an indexed region,
+	 * otherwise TYPE_INT_RGB; or null if it hasn't been stored.
+	 */
+	public BufferedImage get(Key key) throws IOException {
+		final Path path = regionPath(key);
+		if (!Files.exists(path))
+			return null;
+		return region(key, path, RGB).get(slot(key));
+	}
+
+	/**
+	 * Stores the tile. A palette-indexed tile starts an indexed region if there isn't one yet; one that
+	 * isn't indexed doesn't go into an indexed region, nor does a tile into a region closed meanwhile.
+	 */
+	public void put(Key key, BufferedImage image) throws IOException {
+		final Path path = regionPath(key);
+		final int kind = image.getColorModel() instanceof IndexColorModel && image.getRaster().getDataBuffer() instanceof DataBufferByte
+				? INDEXED
+				: RGB;
+		region(key, path, kind).put(slot(key), image);
+	}
+
+	@Override
+	public void close() {
+		synchronized (regions) {
+			regions.values().forEach(Region::close);
+			regions.clear();
+		}
+	}
+
+	/**
+	 * The open region at path, opening it (for tiles of kind, if it's new) if need be. Only finding it takes
+	 * the store's lock; reading and writing tiles takes the region file's.
+	 */
+	private Region region(Key key, Path path, int kind) throws IOException {
+		synchronized (regions) {
+			Region region = regions.get(path);
+			if (region == null) {
+				if (!Files.exists(path)) {
+					Files.createDirectories(path.getParent());
+					prune(Region.size(key.width, key.height, kind));
+				}
+				region = new Region(path, key.width, key.height, kind);
+				Files.setLastModifiedTime(path, FileTime.from(Instant.now()));
+				regions.put(path, region);
+			}
+			return region;
+		}
+	}
+
+	/**
+	 * Deletes the least recently used region files, closing them first if they're open, until the rest and
+	 * reserved more bytes fit the budget; along with any group left empty.
+	 */
+	private void prune(long reserved) throws IOException {
+		final List<Path> files;
+		try (Stream<Path> found = Files.find(root, 2, (path, attributes) -> attributes.isRegularFile()
+				&& path.getFileName().toString().endsWith(".tiles"))) {
+			files = found.collect(Collectors.toList());
+		}
+		final Map<Path, Long> sizes = new LinkedHashMap<>();
+		final Map<Path, FileTime> used = new LinkedHashMap<>();
+		long bytes = reserved;
+		for (Path file : files) {
+			sizes.put(file, Files.size(file));
+			used.put(file, Files.getLastModifiedTime(file));
+			bytes += sizes.get(file);
+		}
+		if (bytes <= budget)
+			return;
+
+		files.sort(Comparator.comparing(used::get));
+		for (Path file : files) {
+			if (bytes <= budget)
+				break;
+			final Region open = regions.remove(file);
+			if (open != null)
+				open.close();
+			Files.deleteIfExists(file);
+			bytes -= sizes.get(file);
+			try (Stream<Path> rest = Files.list(file.getParent())) {
+				if (!rest.findAny().isPresent())
+					Files.deleteIfExists(file.getParent());
+			}
+		}
+	}
+
+	private Path regionPath(Key key) {
+		final int regionX = Math.floorDiv(Math.floorDiv(key.x, key.width), REGION);
+		final int regionY = Math.floorDiv(Math.floorDiv(key.y, key.height), REGION);
+		return root.resolve(key.group()).resolve(String.format("r.%d.%d.tiles", regionX, regionY));
+	}
+
+	private static int slot(Key key) {
+		return Math.floorMod(Math.floorDiv(key.y, key.height), REGION) * REGION
+				+ Math.floorMod(Math.floorDiv(key.x, key.width), REGION);
+	}
+}
@@ -0,0 +1,225 @@
+package dmk.openSimplex;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import java.util.function.DoubleUnaryOperator;
+
+import org.junit.jupiter.api.Test;
+
+class OpenSimplex2Tests {
+	private static final int WIDTH = 160;
+	private static final int HEIGHT = 120;
+	private static final long SEED = 9;
+
+	@Test
+	void noise2GridMatchesPointwise() {
+		for (double step : new double[] {1 / 50.0, 8 / 50.0, 1.3}) {
+			final double x0 = 1000029092 * step / 64;
+			final double y0 = -999995106 * step / 64;
+
+			float[] grid = new float[WIDTH * HEIGHT];
+			OpenSimplex2.noise2(SEED, x0, y0, step, step, WIDTH, HEIGHT, grid, 0);
+
+			for (int j = 0; j < HEIGHT; ++j) {
+				for (int i = 0; i < WIDTH; ++i) {
+					final float expected = OpenSimplex2.noise2(SEED, x0 + i * step, y0 + j * step);
+					assertEquals(Float.floatToIntBits(expected), Float.floatToIntBits(grid[j * WIDTH + i]));
+				}
+			}
+		}
+	}
+
+	@Test
+	void noise3GridMatchesPointwise() {
+		double[] z = new double[WIDTH * HEIGHT];
+		for (int i = 0; i < z.length; ++i)
+			z[i] = OpenSimplex2.noise2(SEED + 1, (i % WIDTH) / 50.0, (i / WIDTH) / 50.0);
+
+		for (double step : new double[] {1 / 256.0, 1 / 1024.0, 0.7}) {
+			final double x0 = 1000029092 * step;
+			final double y0 = 999995106 * step;
+
+			double[] grid = new double[WIDTH * HEIGHT];
+			OpenSimplex2.noise3_ImproveXY(SEED, x0, y0, step, step, z, WIDTH, HEIGHT, grid, 0);
+
+			for (int j = 0; j < HEIGHT; ++j) {
+				for (int i = 0; i < WIDTH; ++i) {
+					final float expected = OpenSimplex2.noise3_ImproveXY(SEED, x0 + i * step, y0 + j * step, z[j * WIDTH + i]);
+					assertEquals(Float.floatToIntBits(expected), Float.floatToIntBits((float)grid[j * WIDTH + i]));
+				}
+			}
+		}
+	}
+
+	@Test
+	void multiSeedMatchesSingleSeed() {
+		final long[] seeds = {SEED, SEED + 1, SEED + 5, -SEED};
+		float[] out = new float[seeds.length];
+		
+		for (int i = 0; i < 2000; ++i) {
+			final double x = 1000029092 / 256.0 + i * 0.37;
+			final double y = 999995106 / 256.0 - i * 0.11;
+			final double z = Math.sin(i * 0.05);
+			
+			OpenSimplex2.noise2(seeds, x, y, out);
+			for (int k = 0; k < seeds.length; ++k)
+				assertEquals(Float.floatToIntBits(OpenSimplex2.noise2(seeds[k], x, y)), Float.floatToIntBits(out[k]));
+			
+			OpenSimplex2.noise3_ImproveXY(seeds, x, y, z, out);
+			for (int k = 0; k < seeds.length; ++k)
+				assertEquals(Float.floatToIntBits(OpenSimplex2.noise3_ImproveXY(seeds[k], x, y, z)), Float.floatToIntBits(out[k]));
+		}
+	}
+
+	@Test
+	void gradientMatchesValueAndFiniteDifference() {
+		final int count = 4000;
+		float[] gradient = new float[3];
+		int skipped = 0;
+
+		Random random = new Random(SEED);
+		for (int i = 0; i < count; ++i) {
+			final double x = (random.nextDouble() - 0.5) * 200;
+			final double y = (random.nextDouble() - 0.5) * 200;
+			final double z = random.nextDouble() * 2 - 1;
+
+			final float value2 = OpenSimplex2.noise2_Gradient(SEED, x, y, gradient);
+			assertEquals(Float.floatToIntBits(OpenSimplex2.noise2(SEED, x, y)), Float.floatToIntBits(value2));
+			if (!assertDerivative(d -> OpenSimplex2.noise2(SEED, x + d, y), gradient[0]))
+				skipped++;
+			if (!assertDerivative(d -> OpenSimplex2.noise2(SEED, x, y + d), gradient[1]))
+				skipped++;
+
+			final float value3 = OpenSimplex2.noise3_ImproveXY_Gradient(SEED, x, y, z, gradient);
+			assertEquals(Float.floatToIntBits(OpenSimplex2.noise3_ImproveXY(SEED, x, y, z)), Float.floatToIntBits(value3));
+			if (!assertDerivative(d -> OpenSimplex2.noise3_ImproveXY(SEED, x + d, y, z), gradient[0]))
+				skipped++;
+			if (!assertDerivative(d -> OpenSimplex2.noise3_ImproveXY(SEED, x, y + d, z), gradient[1]))
+				skipped++;
+			if (!assertDerivative(d -> OpenSimplex2.noise3_ImproveXY(SEED, x, y, z + d), gradient[2]))
+				skipped++;
+		}
+
+		assertTrue(skipped < count / 100, skipped + " points skipped");
+	}
+
+	@Test
+	void samplerRowsAndSharedWalksMatchPointwise() {
+		final OpenSimplex2.Sampler[] samplers = {
+				new OpenSimplex2.Sampler(SEED), new OpenSimplex2.Sampler(SEED + 1), new OpenSimplex2.Sampler(-SEED)};
+		final OpenSimplex2.Sampler sampler = samplers[0];
+		float[] out = new float[samplers.length];
+		
+		final double[] x = new double[WIDTH];
+		float[] row = new float[WIDTH];
+		for (double step : new double[] {1 / 50.0, 1.3}) {
+			for (int i = 0; i < WIDTH; ++i)
+				x[i] = 1000029092 * step / 64 + i * step;
+			for (int j = 0; j < HEIGHT; ++j) {
+				final double y = -999995106 * step / 64 + j * step;
+				sampler.noise2_Row(x, y, WIDTH, row, 0);
+				for (int i = 0; i < WIDTH; ++i)
+					assertEquals(Float.floatToIntBits(sampler.noise2(x[i], y)), Float.floatToIntBits(row[i]));
+			}
+		}
+		
+		for (int i = 0; i < 2000; ++i) {
+			final double px = 1000029092 / 256.0 + i * 0.37;
+			final double py = 999995106 / 256.0 - i * 0.11;
+			final double pz = Math.sin(i * 0.05);
+			
+			OpenSimplex2.noise3_ImproveXY(samplers, px, py, pz, out);
+			for (int k = 0; k < samplers.length; ++k)
+				assertEquals(Float.floatToIntBits(samplers[k].noise3_ImproveXY(px, py, pz)), Float.floatToIntBits(out[k]));
+		}
+	}
+
+	@Test
+	void samplerGradientMatchesValueAndFiniteDifference() {
+		final OpenSimplex2.Sampler sampler = new OpenSimplex2.Sampler(SEED);
+		final OpenSimplex2.Sampler other = new OpenSimplex2.Sampler(SEED + 1);
+		final int count = 4000;
+		float[] gradient = new float[3];
+		int skipped = 0, differing = 0;
+
+		Random random = new Random(SEED);
+		for (int i = 0; i < count; ++i) {
+			final double x = (random.nextDouble() - 0.5) * 200;
+			final double y = (random.nextDouble() - 0.5) * 200;
+			final double z = random.nextDouble() * 2 - 1;
+
+			final float value2 = sampler.noise2_Gradient(x, y, gradient);
+			assertEquals(Float.floatToIntBits(sampler.noise2(x, y)), Float.floatToIntBits(value2));
+			if (!assertDerivative(d -> sampler.noise2(x + d, y), gradient[0]))
+				skipped++;
+			if (!assertDerivative(d -> sampler.noise2(x, y + d), gradient[1]))
+				skipped++;
+
+			final float value3 = sampler.noise3_ImproveXY_Gradient(x, y, z, gradient);
+			assertEquals(Float.floatToIntBits(sampler.noise3_ImproveXY(x, y, z)), Float.floatToIntBits(value3));
+			if (!assertDerivative(d -> sampler.noise3_ImproveXY(x + d, y, z), gradient[0]))
+				skipped++;
+			if (!assertDerivative(d -> sampler.noise3_ImproveXY(x, y + d, z), gradient[1]))
+				skipped++;
+			if (!assertDerivative(d -> sampler.noise3_ImproveXY(x, y, z + d), gradient[2]))
+				skipped++;
+
+			// the seed is all that tells two samplers apart
+			if (Math.abs(value2 - other.noise2(x, y)) > 1e-3)
+				differing++;
+		}
+
+		assertTrue(skipped < count / 100, skipped + " points skipped");
+		assertTrue(differing > count * 9 / 10, differing + " points differ between seeds");
+	}
+
+	@Test
+	void fractalGridMatchesPoint() {
+		final Fractal fractal = Fractal.geometric(SEED, 200, 6, 2, Fractal.harmonicWeights(6));
+
+		for (double scale : new double[] {1, 0.5, 32}) {
+			final double[] x = new double[WIDTH];
+			final double[] y = new double[HEIGHT];
+			for (int i = 0; i < WIDTH; ++i)
+				x[i] = (-1000 + i) * scale;
+			for (int j = 0; j < HEIGHT; ++j)
+				y[j] = (2000 + j) * scale;
+
+			double[] grid = new double[WIDTH * HEIGHT];
+			fractal.noise(x, y, scale, grid, 0);
+
+			for (int j = 0; j < HEIGHT; ++j) {
+				for (int i = 0; i < WIDTH; ++i)
+					assertEquals(Double.doubleToLongBits(fractal.noise(x[i], y[j], scale)), Double.doubleToLongBits(grid[j * WIDTH + i]));
+			}
+		}
+	}
+
+	@Test
+	void fractalDropsOctavesFinerThanSpacing() {
+		final Fractal fractal = Fractal.geometric(SEED, 200, 6, 2, Fractal.harmonicWeights(6));
+
+		assertEquals(6, fractal.getOctaves(0));
+		assertEquals(6, fractal.getOctaves(1));
+		assertEquals(2, fractal.getOctaves(32)); // periods 200 and 100 survive, 50 spans only 1.6 samples
+		assertEquals(fractal.noise(123.4, -56.7), fractal.noise(123.4, -56.7, 1));
+	}
+
+	/**
+	 * Compares an analytic derivative with central differences of f around 0, returning false
+	 * without asserting where two step sizes disagree. The 3D lattice walk only visits the nearest
+	 * candidates, which leaves small steps in the value, and a difference across one says nothing
+	 * about the slope.
+	 */
+	private static boolean assertDerivative(DoubleUnaryOperator f, float derivative) {
+		final double coarse = (f.applyAsDouble(1e-3) - f.applyAsDouble(-1e-3)) / 2e-3;
+		final double fine = (f.applyAsDouble(5e-4) - f.applyAsDouble(-5e-4)) / 1e-3;
+		if (Math.abs(coarse - fine) > 1e-2)
+			return false;
+
+		assertEquals(fine, derivative, 2e-2);
+		return true;
+	}
+}
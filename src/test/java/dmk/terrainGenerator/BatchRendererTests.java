@@ -0,0 +1,57 @@
+package dmk.terrainGenerator;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BatchRendererTests {
+	private static final int LEFT = 1000029092, TOP = 999995106;
+	// strips of 17 rows, the last one short
+	private static final int WIDTH = 97, HEIGHT = 150, STRIP_ROWS = 17;
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void stripsMatchOneRenderOfTheRegion() throws Exception {
+		final TerrainGenerator terrainGenerator = new TerrainGenerator(9);
+		for (TerrainGenerator.Quality quality : TerrainGenerator.Quality.values()) {
+			terrainGenerator.setQuality(quality);
+			for (double scale : new double[] {0.25, 2}) {
+				final Path png = dir.resolve(quality + "_" + scale + ".png");
+				try (StripSink sink = new PngSink(png, WIDTH, HEIGHT, 2)) {
+					new BatchRenderer(terrainGenerator, 2).render(LEFT, TOP, WIDTH, HEIGHT, scale, STRIP_ROWS, sink);
+				}
+
+				assertArrayEquals(TerrainGenerator.rgb(terrainGenerator.generate(LEFT, TOP, WIDTH, HEIGHT, scale)), read(png),
+						String.format("%s, scale %s", quality, scale));
+			}
+		}
+	}
+
+	@Test
+	void renderOptionWritesAnExactRender() throws Exception {
+		final Path png = dir.resolve("render.png");
+		new TerrainGeneratorApplication().run("--render", "--x=" + LEFT, "--y=" + TOP, "--width=" + WIDTH, "--height=" + HEIGHT,
+				"--scale=2", "--threads=2", "--strip-rows=" + STRIP_ROWS, "--out=" + png);
+
+		final TerrainGenerator terrainGenerator = new TerrainGenerator(9);
+		terrainGenerator.setQuality(TerrainGenerator.Quality.EXACT);
+		assertArrayEquals(TerrainGenerator.rgb(terrainGenerator.generate(LEFT, TOP, WIDTH, HEIGHT, 2)), read(png));
+	}
+
+	private static int[] read(Path png) throws IOException {
+		final BufferedImage image = ImageIO.read(png.toFile());
+		final int[] pixels = image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+		for (int i = 0; i < pixels.length; ++i)
+			pixels[i] &= 0xffffff;
+		return pixels;
+	}
+}
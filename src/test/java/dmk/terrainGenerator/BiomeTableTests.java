@@ -0,0 +1,57 @@
+package dmk.terrainGenerator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class BiomeTableTests {
+	private static final BiomeTable.Rule RULE = (height, tide, humidity, volcanicActivity) -> height < 0.3 - humidity * 0.25
+			? 0
+			: volcanicActivity > 0.1 ? 1 : 2;
+
+	@Test
+	void lookupIsRuleOrMixed() {
+		final BiomeTable table = BiomeTable.bake(RULE,
+				BiomeTable.Axis.uniform(-1, 1, 64),
+				BiomeTable.Axis.ignored(),
+				BiomeTable.Axis.uniform(-1, 1, 64),
+				BiomeTable.Axis.uniform(-1, 1, 32));
+		assertTrue(table.getMixedFraction() < 0.1, table.getMixedFraction() + " of cells mixed");
+
+		Random random = new Random(9);
+		int baked = 0;
+		for (int i = 0; i < 100000; ++i) {
+			final double height = random.nextDouble() * 2 - 1;
+			final double humidity = random.nextDouble() * 2 - 1;
+			final double volcanicActivity = random.nextDouble() * 2 - 1;
+			final int land = table.land(height, 0, humidity, volcanicActivity);
+			if (land != BiomeTable.MIXED) {
+				assertEquals(RULE.land(height, 0, humidity, volcanicActivity), land);
+				baked++;
+			}
+		}
+		assertTrue(baked > 90000);
+
+		// the top edge belongs to the last cell, and anything beyond the grid is left to the rule
+		assertEquals(2, table.land(1, 0, 1, -1));
+		assertEquals(BiomeTable.MIXED, table.land(1.5, 0, 0, 0));
+		assertEquals(BiomeTable.MIXED, table.land(Double.NaN, 0, 0, 0));
+	}
+
+	@Test
+	void discreteAndIgnoredAxes() {
+		final BiomeTable table = BiomeTable.bake((key, tide, humidity, volcanicActivity) -> key < 3 ? 0 : 1,
+				BiomeTable.Axis.discrete(-10, 10),
+				BiomeTable.Axis.ignored(),
+				BiomeTable.Axis.ignored(),
+				BiomeTable.Axis.ignored());
+		assertEquals(0, table.getMixedFraction());
+
+		for (int key = -10; key <= 10; ++key)
+			assertEquals(key < 3 ? 0 : 1, table.land(key, 7, 123, -456));
+		assertEquals(BiomeTable.MIXED, table.land(11, 0, 0, 0));
+	}
+}
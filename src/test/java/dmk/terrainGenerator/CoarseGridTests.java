@@ -0,0 +1,66 @@
+package dmk.terrainGenerator;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import dmk.openSimplex.Fractal;
+
+class CoarseGridTests {
+	private static final int WIDTH = 160;
+	private static final int HEIGHT = 120;
+	private static final int LEFT = 1000029092;
+	private static final int TOP = -999995106;
+
+	private final Fractal fractal = Fractal.geometric(9, 200, 6, 2, Fractal.harmonicWeights(6));
+
+	@Test
+	void stepOneIsExact() {
+		double[] out = new double[WIDTH * HEIGHT];
+		CoarseGrid.sample((x, y) -> fractal.noise(x, y), 1, LEFT, TOP, WIDTH, HEIGHT, out);
+
+		for (int j = 0; j < HEIGHT; ++j) {
+			for (int i = 0; i < WIDTH; ++i)
+				assertEquals(fractal.noise(LEFT + i, TOP + j), out[j * WIDTH + i]);
+		}
+	}
+
+	@Test
+	void chosenStepStaysWithinErrorBound() {
+		assertTrue(CoarseGrid.chooseStep(fractal, 0.25, 0.01) > 1);
+
+		for (double spacing : new double[] {0.25, 1, 4}) {
+			final double bound = 0.01;
+			final int step = CoarseGrid.chooseStep(fractal, spacing, bound);
+
+			double[] out = new double[WIDTH * HEIGHT];
+			CoarseGrid.sample((x, y) -> fractal.noise(x * spacing, y * spacing, spacing), step, LEFT, TOP, WIDTH, HEIGHT, out);
+
+			for (int j = 0; j < HEIGHT; ++j) {
+				for (int i = 0; i < WIDTH; ++i)
+					assertEquals(fractal.noise((LEFT + i) * spacing, (TOP + j) * spacing, spacing), out[j * WIDTH + i], bound);
+			}
+		}
+	}
+
+	@Test
+	void bandsMatchWholeTile() {
+		final int step = 8;
+		double[] whole = new double[WIDTH * HEIGHT];
+		CoarseGrid.sample((x, y) -> fractal.noise(x, y), step, LEFT, TOP, WIDTH, HEIGHT, whole);
+
+		// split at a row that isn't on the lattice
+		final int split = 37;
+		double[] upper = new double[WIDTH * split];
+		double[] lower = new double[WIDTH * (HEIGHT - split)];
+		CoarseGrid.sample((x, y) -> fractal.noise(x, y), step, LEFT, TOP, WIDTH, split, upper);
+		CoarseGrid.sample((x, y) -> fractal.noise(x, y), step, LEFT, TOP + split, WIDTH, HEIGHT - split, lower);
+
+		double[] joined = new double[WIDTH * HEIGHT];
+		System.arraycopy(upper, 0, joined, 0, upper.length);
+		System.arraycopy(lower, 0, joined, upper.length, lower.length);
+		assertArrayEquals(whole, joined);
+	}
+}
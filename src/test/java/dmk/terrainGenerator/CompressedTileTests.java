@@ -0,0 +1,49 @@
+package dmk.terrainGenerator;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.IndexColorModel;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class CompressedTileTests {
+	private static final int WIDTH = 160;
+	private static final int HEIGHT = 120;
+
+	@Test
+	void indexedTileKeepsItsPalette() {
+		final IndexColorModel palette = new IndexColorModel(8, 3, new int[] {0x000066, 0xbdb15e, 0x2d6512}, 0, false, -1, DataBuffer.TYPE_BYTE);
+		final BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_BYTE_INDEXED, palette);
+		// bands of land, as a tile mostly is
+		for (int y = 0; y < HEIGHT; ++y) {
+			for (int x = 0; x < WIDTH; ++x)
+				image.getRaster().setSample(x, y, 0, (x + y) / 60 % 3);
+		}
+
+		final CompressedTile tile = CompressedTile.of(image);
+		assertTrue(tile.getBytes() < WIDTH * HEIGHT / 20, tile.getBytes() + " bytes");
+		final BufferedImage restored = tile.toImage();
+		assertSame(palette, restored.getColorModel());
+		assertArrayEquals(TerrainGenerator.rgb(image), TerrainGenerator.rgb(restored));
+	}
+
+	@Test
+	void rgbTileRoundTrips() {
+		final BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+		Random random = new Random(9);
+		for (int y = 0; y < HEIGHT; ++y) {
+			for (int x = 0; x < WIDTH; ++x)
+				image.setRGB(x, y, random.nextInt(0x1000000));
+		}
+
+		final BufferedImage restored = CompressedTile.of(image).toImage();
+		assertEquals(BufferedImage.TYPE_INT_RGB, restored.getType());
+		assertArrayEquals(TerrainGenerator.rgb(image), TerrainGenerator.rgb(restored));
+	}
+}
@@ -0,0 +1,136 @@
+package dmk.terrainGenerator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+class LandProfilesTests {
+	private static final String JSON = "{"
+			+ "\"ocean\": {\"color\": \"#0000ff\","
+			+ "  \"height\": {\"idealPosition\": -1, \"anchor\": 0, \"variance\": 0.5, \"decayCurve\": 0.75},"
+			+ "  \"tide\": {\"idealPosition\": 1, \"anchor\": 1, \"variance\": 2, \"decayCurve\": 1}},"
+			+ "\"sand\": {\"color\": \"#c2b280\","
+			+ "  \"height\": {\"idealPosition\": 0, \"anchor\": 0.5, \"variance\": 0.2, \"decayCurve\": 2},"
+			+ "  \"humidity\": {\"idealPosition\": -0.5, \"anchor\": 0.5, \"variance\": 1, \"decayCurve\": 1}},"
+			+ "\"lava\": {\"color\": \"#ff2000\","
+			+ "  \"volcanicActivity\": {\"idealPosition\": 1, \"anchor\": 1, \"variance\": 0.4, \"decayCurve\": 0.5}}"
+			+ "}";
+
+	private final JsonNode root;
+	private final LandProfiles profiles;
+
+	LandProfilesTests() throws Exception {
+		root = new ObjectMapper().readTree(JSON);
+		profiles = LandProfiles.compile(root);
+	}
+
+	@Test
+	void keepsFileOrder() {
+		assertEquals(3, profiles.size());
+		assertEquals("ocean", profiles.getName(0));
+		assertEquals("lava", profiles.getName(2));
+		assertEquals(0xc2b280, profiles.getColor(1));
+	}
+
+	@Test
+	void classifyMatchesJsonScores() {
+		Random random = new Random(9);
+		for (int i = 0; i < 20000; ++i) {
+			final double height = random.nextDouble() * 2 - 1;
+			final double tide = random.nextDouble() * 2 - 1;
+			final double humidity = random.nextDouble() * 2 - 1;
+			final double volcanicActivity = random.nextDouble() * 2 - 1;
+			assertEquals(reference(height, tide, humidity, volcanicActivity), profiles.classify(height, tide, humidity, volcanicActivity));
+		}
+	}
+
+	@Test
+	void indexMatchesExhaustiveScoring() {
+		// enough profiles to spill past one 64-bit word, with some channels left out
+		final String[] channels = {"height", "tide", "humidity", "volcanicActivity"};
+		final ObjectMapper mapper = new ObjectMapper();
+		final ObjectNode many = mapper.createObjectNode();
+		Random random = new Random(9);
+		for (int p = 0; p < 150; ++p) {
+			final ObjectNode land = many.putObject("land" + p);
+			land.put("color", String.format("#%06x", random.nextInt(0x1000000)));
+			for (String channel : channels) {
+				if (random.nextInt(4) == 0)
+					continue;
+				final ObjectNode profile = land.putObject(channel);
+				profile.put("idealPosition", Math.round(random.nextDouble() * 40 - 20) / 20.0);
+				profile.put("anchor", random.nextInt(5) / 4.0);
+				profile.put("variance", (1 + random.nextInt(8)) / 8.0);
+				profile.put("decayCurve", 0.5 + random.nextDouble() * 2);
+			}
+		}
+		final LandProfiles indexed = LandProfiles.compile(many);
+
+		for (int i = 0; i < 50000; ++i) {
+			// every other sample sits on a twentieth, where window bounds tend to land
+			final double[] in = new double[4];
+			for (int c = 0; c < in.length; ++c)
+				in[c] = i % 2 == 0 ? random.nextDouble() * 3 - 1.5 : Math.round(random.nextDouble() * 60 - 30) / 20.0;
+			assertEquals(indexed.classifyExhaustive(in[0], in[1], in[2], in[3]), indexed.classify(in[0], in[1], in[2], in[3]));
+		}
+	}
+
+	@Test
+	void nothingMatchedIsMinusOne() {
+		assertEquals(-1, profiles.classify(0.8, -1, 0.9, -1));
+	}
+
+	@Test
+	void recolouredProfilesClassifyAlike() throws Exception {
+		assertEquals(0xff00ff, profiles.getPalette().getRGB(0) & 0xffffff);
+		assertEquals(0xc2b280, profiles.getPalette().getRGB(2) & 0xffffff);
+
+		final LandProfiles recoloured = LandProfiles.compile(new ObjectMapper().readTree(JSON.replace("#c2b280", "#ffffff")));
+		assertTrue(recoloured.classifiesLike(profiles));
+		assertEquals(0xffffff, recoloured.getPalette().getRGB(2) & 0xffffff);
+
+		final LandProfiles moved = LandProfiles.compile(new ObjectMapper().readTree(JSON.replace("\"variance\": 0.4", "\"variance\": 0.5")));
+		assertFalse(moved.classifiesLike(profiles));
+	}
+
+	/**
+	 * The scoring TerrainGenerator.chooseLand used to do straight off the JSON tree.
+	 */
+	private int reference(double height, double tide, double humidity, double volcanicActivity) {
+		int best = -1;
+		double bestScore = 0;
+		for (int p = 0; p < profiles.size(); ++p) {
+			final JsonNode land = root.get(profiles.getName(p));
+			final double score = score(height, land.get("height"))
+					+ score(tide, land.get("tide"))
+					+ score(humidity, land.get("humidity"))
+					+ score(volcanicActivity, land.get("volcanicActivity"));
+			if (score > bestScore) {
+				best = p;
+				bestScore = score;
+			}
+		}
+		return best;
+	}
+
+	private static double score(double input, JsonNode profile) {
+		if (profile == null)
+			return 0;
+
+		final double ideal = profile.get("idealPosition").asDouble();
+		final double anchor = profile.get("anchor").asDouble();
+		final double variance = profile.get("variance").asDouble();
+		if (input < ideal - (variance * anchor) || input > ideal + (variance * (1 - anchor)))
+			return 0;
+
+		return 1 - Math.pow(Math.abs(ideal - input) / variance, profile.get("decayCurve").asDouble());
+	}
+}
@@ -0,0 +1,98 @@
+package dmk.terrainGenerator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LandProfilesWatcherTests {
+	// long enough for the file system to report a write and the watcher to settle, many times over
+	private static final long PATIENCE_MILLIS = 5000;
+
+	@TempDir
+	Path directory;
+	private Path file;
+	private byte[] profiles;
+
+	@BeforeEach
+	void watchAProfilesFileHere() throws IOException {
+		try (InputStream bundled = TerrainGenerator.class.getResourceAsStream("/landProfiles.json")) {
+			profiles = bundled.readAllBytes();
+		}
+		file = directory.resolve("landProfiles.json");
+		Files.write(file, profiles);
+		System.setProperty("landProfiles", file.toString());
+	}
+
+	@AfterEach
+	void restoreTheProfilesFile() {
+		System.clearProperty("landProfiles");
+	}
+
+	@Test
+	void oneWriteReloadsOnceAfterTheSettleTime() throws Exception {
+		final TerrainGenerator terrainGenerator = new TerrainGenerator(9);
+		final Semaphore reloads = new Semaphore(0);
+		final AtomicLong reloaded = new AtomicLong();
+		try (LandProfilesWatcher watcher = new LandProfilesWatcher(terrainGenerator, () -> {
+			reloaded.set(System.nanoTime());
+			reloads.release();
+		})) {
+			final long written = System.nanoTime();
+			Files.write(file, profiles);
+
+			assertTrue(reloads.tryAcquire(PATIENCE_MILLIS, TimeUnit.MILLISECONDS));
+			assertTrue(TimeUnit.NANOSECONDS.toMillis(reloaded.get() - written) >= LandProfilesWatcher.SETTLE_MILLIS);
+			assertFalse(reloads.tryAcquire(4 * LandProfilesWatcher.SETTLE_MILLIS, TimeUnit.MILLISECONDS));
+		}
+	}
+
+	@Test
+	void aBurstOfWritesReloadsOnce() throws Exception {
+		final TerrainGenerator terrainGenerator = new TerrainGenerator(9);
+		final Semaphore reloads = new Semaphore(0);
+		try (LandProfilesWatcher watcher = new LandProfilesWatcher(terrainGenerator, reloads::release)) {
+			// an editor's truncate, partial write and final write, each well within the settle time of the last
+			Files.write(file, new byte[0]);
+			Thread.sleep(LandProfilesWatcher.SETTLE_MILLIS / 5);
+			Files.write(file, "{\"ocean\": {".getBytes(StandardCharsets.UTF_8));
+			Thread.sleep(LandProfilesWatcher.SETTLE_MILLIS / 5);
+			Files.write(file, profiles);
+
+			assertTrue(reloads.tryAcquire(PATIENCE_MILLIS, TimeUnit.MILLISECONDS));
+			assertFalse(reloads.tryAcquire(4 * LandProfilesWatcher.SETTLE_MILLIS, TimeUnit.MILLISECONDS));
+		}
+	}
+
+	@Test
+	void anInvalidSaveKeepsTheCurrentProfiles() throws Exception {
+		final TerrainGenerator terrainGenerator = new TerrainGenerator(9);
+		final LandProfiles before = terrainGenerator.getLandProfiles();
+		final Semaphore reloads = new Semaphore(0);
+		try (LandProfilesWatcher watcher = new LandProfilesWatcher(terrainGenerator, reloads::release)) {
+			Files.write(file, "{\"ocean\": {".getBytes(StandardCharsets.UTF_8));
+
+			assertFalse(reloads.tryAcquire(4 * LandProfilesWatcher.SETTLE_MILLIS, TimeUnit.MILLISECONDS));
+			assertSame(before, terrainGenerator.getLandProfiles());
+
+			// and the watcher is still there for the next good save
+			Files.write(file, profiles);
+			assertTrue(reloads.tryAcquire(PATIENCE_MILLIS, TimeUnit.MILLISECONDS));
+			assertEquals(before.size(), terrainGenerator.getLandProfiles().size());
+		}
+	}
+}
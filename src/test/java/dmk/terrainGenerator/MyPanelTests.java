@@ -0,0 +1,50 @@
+package dmk.terrainGenerator;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.event.KeyEvent;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MyPanelTests {
+	@TempDir
+	Path tileStore;
+
+	@BeforeEach
+	void keepTheTileStoreHere() {
+		System.setProperty("tileStore", tileStore.toString());
+	}
+
+	@AfterEach
+	void restoreTheTileStore() {
+		System.clearProperty("tileStore");
+	}
+
+	@Test
+	void aTileFromBeforeASettingsChangeIsDroppedOnArrival() throws IOException {
+		// tiles of 10x10
+		final MyPanel panel = new MyPanel(50, 50);
+		// the panel's generator starts with the same settings, so this snapshot has the panel's version
+		final TerrainGenerator terrainGenerator = new TerrainGenerator(9);
+		terrainGenerator.setQuality(TerrainGenerator.Quality.ADAPTIVE);
+		final TerrainGenerator.Snapshot before = terrainGenerator.snapshot();
+		final TerrainGenerator.ChannelRasters rasters = terrainGenerator.createRasters(before, 0, 0, 10, 10, 1);
+		final BufferedImage image = terrainGenerator.render(before, rasters, () -> false);
+		assertTrue(panel.arrive(before, image, rasters));
+
+		panel.getKeyListeners()[0].keyPressed(new KeyEvent(panel, KeyEvent.KEY_PRESSED, 0, 0, KeyEvent.VK_UP, KeyEvent.CHAR_UNDEFINED));
+		assertFalse(panel.arrive(before, image, rasters));
+
+		terrainGenerator.incrementSeed();
+		final TerrainGenerator.Snapshot after = terrainGenerator.snapshot();
+		final TerrainGenerator.ChannelRasters afterRasters = terrainGenerator.createRasters(after, 0, 0, 10, 10, 1);
+		assertTrue(panel.arrive(after, terrainGenerator.render(after, afterRasters, () -> false), afterRasters));
+	}
+}
@@ -0,0 +1,68 @@
+package dmk.terrainGenerator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Adler32;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PngSinkTests {
+	private static final int WIDTH = 173;
+	private static final int HEIGHT = 211;
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void serialAndParallelDecodeToTheSamePixels() throws IOException {
+		// runs of flat colour with noise between, like a map
+		final int[] pixels = new int[WIDTH * HEIGHT];
+		Random random = new Random(9);
+		for (int i = 0; i < pixels.length; ++i)
+			pixels[i] = i % 40 < 25 ? 0x2d6512 + (i / WIDTH) : random.nextInt(0x1000000);
+
+		for (int threads : new int[] {1, 4}) {
+			final Path png = dir.resolve("strips_" + threads + ".png");
+			try (StripSink sink = new PngSink(png, WIDTH, HEIGHT, threads)) {
+				// uneven strips, down to a single row
+				int row = 0;
+				for (int rows : new int[] {1, 64, 7, 100, 39}) {
+					sink.write(Arrays.copyOfRange(pixels, row * WIDTH, (row + rows) * WIDTH), rows);
+					row += rows;
+				}
+			}
+
+			final BufferedImage image = ImageIO.read(png.toFile());
+			assertEquals(WIDTH, image.getWidth());
+			assertEquals(HEIGHT, image.getHeight());
+			for (int y = 0; y < HEIGHT; ++y) {
+				for (int x = 0; x < WIDTH; ++x)
+					assertEquals(pixels[y * WIDTH + x], image.getRGB(x, y) & 0xffffff);
+			}
+		}
+	}
+
+	@Test
+	void combinedAdlerMatchesWhole() {
+		final byte[] bytes = new byte[200000];
+		new Random(9).nextBytes(bytes);
+
+		final Adler32 whole = new Adler32();
+		whole.update(bytes);
+		for (int split : new int[] {0, 1, 65521, 123457, bytes.length}) {
+			final Adler32 first = new Adler32();
+			first.update(bytes, 0, split);
+			final Adler32 second = new Adler32();
+			second.update(bytes, split, bytes.length - split);
+			assertEquals(whole.getValue(), PngSink.combine(first.getValue(), second.getValue(), bytes.length - split));
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package dmk.terrainGenerator;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+class TerrainGeneratorTests {
+	private static final int LEFT = 1000029092, TOP = 999995106;
+	private static final int WIDTH = 64, HEIGHT = 40;
+
+	/**
+	 * Arrays.hashCode of 96x64 EXACT tiles as of VERSION 2, when the layers moved to seed-bound samplers, for each
+	 * classifier (SIMPLE, RULES, PROFILES, all at a tide of 0) and render mode (COLOR_ONLY, NOISE_ONLY), over
+	 * GOLDEN_TILES and GOLDEN_SCALES in that order. A change that draws anything else must bump VERSION.
+	 */
+	private static final int[] GOLDEN = {
+			-1173570899, -28973535, 801712280, -1424024044, 1505621697, -836888585,
+			-1164962580, -1433541426, -276548932, -459047433, 1594997850, -1605248194,
+			2015411715, 1208755294, -51343223, 2113080409, 1983246993, 2114838759,
+			2003516270, -1493694452, -1967063657, -764736144, -1262242673, -401581821,
+			-1403218392, 1493298464, -1555357352, 544999613, -1230945575, 868560478,
+			2003516270, -1493694452, -1967063657, -764736144, -1262242673, -401581821
+	};
+	private static final int[][] GOLDEN_TILES = {{LEFT, TOP}, {-3000, -2000}};
+	private static final double[] GOLDEN_SCALES = {1, 4, 16};
+
+	@Test
+	void seedUpThenDownComesBackToTheSameVersion() throws IOException {
+		final TerrainGenerator terrainGenerator = new TerrainGenerator(9);
+		final long version = terrainGenerator.snapshot().getVersion();
+
+		terrainGenerator.incrementSeed();
+		assertNotEquals(version, terrainGenerator.snapshot().getVersion());
+		terrainGenerator.decrementSeed();
+		assertEquals(version, terrainGenerator.snapshot().getVersion());
+	}
+
+	@Test
+	void verifyingIsANewVersion() throws IOException {
+		final TerrainGenerator terrainGenerator = new TerrainGenerator(9);
+		final long version = terrainGenerator.snapshot().getVersion();
+
+		terrainGenerator.toggle("verifyBiomeTable");
+		assertNotEquals(version, terrainGenerator.snapshot().getVersion());
+		terrainGenerator.toggle("verifyBiomeTable");
+		assertEquals(version, terrainGenerator.snapshot().getVersion());
+	}
+
+	@Test
+	void renderingASnapshotIgnoresChangesMadeAfterIt() throws IOException {
+		final TerrainGenerator terrainGenerator = new TerrainGenerator(9);
+		final TerrainGenerator.Snapshot snapshot = terrainGenerator.snapshot();
+		final int[] before = render(terrainGenerator, snapshot);
+
+		terrainGenerator.incrementSeed();
+		terrainGenerator.setClassifier(TerrainGenerator.Classifier.RULES);
+		terrainGenerator.setQuality(TerrainGenerator.Quality.ADAPTIVE);
+		terrainGenerator.setErrorBound(TerrainGenerator.Layer.ELEVATION, 0);
+		terrainGenerator.cycleRenderMode();
+		terrainGenerator.setRenderTarget(3);
+
+		assertArrayEquals(before, render(terrainGenerator, snapshot));
+		assertFalse(Arrays.equals(before, TerrainGenerator.rgb(terrainGenerator.generate(LEFT, TOP, WIDTH, HEIGHT, 1))));
+	}
+
+	@Test
+	void exactRendersMatchTheGoldenHashes() throws IOException {
+		final TerrainGenerator terrainGenerator = new TerrainGenerator(9);
+		terrainGenerator.setQuality(TerrainGenerator.Quality.EXACT);
+		int golden = 0;
+		for (TerrainGenerator.Classifier classifier : TerrainGenerator.Classifier.values()) {
+			terrainGenerator.setClassifier(classifier);
+			// COLOR_ONLY, NOISE_ONLY, then past HILLSHADE back to COLOR_ONLY for the next classifier
+			for (int mode = 0; mode < 2; ++mode) {
+				for (int[] tile : GOLDEN_TILES)
+					for (double scale : GOLDEN_SCALES) {
+						final int[] pixels = TerrainGenerator.rgb(terrainGenerator.generate(tile[0], tile[1], 96, 64, scale));
+						assertEquals(GOLDEN[golden++], Arrays.hashCode(pixels),
+								String.format("%s, mode %d, (%d, %d), scale %s", classifier, mode, tile[0], tile[1], scale));
+					}
+				terrainGenerator.cycleRenderMode();
+			}
+			terrainGenerator.cycleRenderMode();
+		}
+	}
+
+	@Test
+	void elevationIsTheSameWhicheverModeFilledIt() throws IOException {
+		final TerrainGenerator color = new TerrainGenerator(9);
+		color.setQuality(TerrainGenerator.Quality.ADAPTIVE);
+		final TerrainGenerator hillshade = new TerrainGenerator(9);
+		hillshade.setQuality(TerrainGenerator.Quality.ADAPTIVE);
+		hillshade.cycleRenderMode();
+		hillshade.cycleRenderMode();
+		
+		// zoomed in far enough that ADAPTIVE samples elevation on a coarse lattice
+		final TerrainGenerator.ChannelRasters colorRasters = color.createRasters(LEFT, TOP, WIDTH, HEIGHT, 0.25);
+		color.render(colorRasters);
+		final TerrainGenerator.ChannelRasters hillshadeRasters = hillshade.createRasters(LEFT, TOP, WIDTH, HEIGHT, 0.25);
+		hillshade.render(hillshadeRasters);
+		
+		assertArrayEquals(color.channel(colorRasters, TerrainGenerator.Layer.ELEVATION),
+				hillshade.channel(hillshadeRasters, TerrainGenerator.Layer.ELEVATION));
+	}
+
+	@Test
+	void aParallelRenderIsIdenticalToASerialOne() throws IOException {
+		// tall enough to split into bands of uneven height
+		final int width = 48, height = 150;
+		final ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			final TerrainGenerator terrainGenerator = new TerrainGenerator(9);
+			for (TerrainGenerator.Quality quality : TerrainGenerator.Quality.values())
+				for (TerrainGenerator.Classifier classifier : TerrainGenerator.Classifier.values()) {
+					terrainGenerator.setQuality(quality);
+					terrainGenerator.setClassifier(classifier);
+					// COLOR_ONLY, NOISE_ONLY, HILLSHADE and round to COLOR_ONLY again
+					for (int mode = 0; mode < 3; ++mode) {
+						for (double scale : new double[] {0.25, 1, 16}) {
+							final int[] serial = TerrainGenerator.rgb(terrainGenerator.render(
+									terrainGenerator.createRasters(LEFT, TOP, width, height, scale)));
+							final int[] parallel = TerrainGenerator.rgb(terrainGenerator.render(
+									terrainGenerator.createRasters(LEFT, TOP, width, height, scale), pool));
+							assertArrayEquals(serial, parallel,
+									String.format("%s, %s, mode %d, scale %s", quality, classifier, mode, scale));
+						}
+						terrainGenerator.cycleRenderMode();
+					}
+				}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private static int[] render(TerrainGenerator terrainGenerator, TerrainGenerator.Snapshot snapshot) {
+		return TerrainGenerator.rgb(terrainGenerator.render(snapshot,
+				terrainGenerator.createRasters(snapshot, LEFT, TOP, WIDTH, HEIGHT, 1), () -> false));
+	}
+}
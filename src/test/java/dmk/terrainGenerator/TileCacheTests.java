@@ -0,0 +1,98 @@
+package dmk.terrainGenerator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class TileCacheTests {
+	@Test
+	void behavesLikeAMapWithinBudget() {
+		final TileCache<String> cache = new TileCache<>(Long.MAX_VALUE, value -> value.length());
+		final Map<Long, String> expected = new HashMap<>();
+		Random random = new Random(9);
+		for (int i = 0; i < 200000; ++i) {
+			// few enough keys that runs collide, and removals have entries to shift back
+			final long key = TileCache.key(random.nextInt(40) * 256 - 5120, random.nextInt(40) * 160, 256, 160, 1);
+			switch (random.nextInt(3)) {
+			case 0:
+				cache.put(key, "v" + i);
+				expected.put(key, "v" + i);
+				break;
+			case 1:
+				assertEquals(expected.remove(key), cache.remove(key));
+				break;
+			default:
+				assertEquals(expected.get(key), cache.get(key));
+			}
+		}
+		assertEquals(expected.size(), cache.size());
+		assertEquals(expected.values().stream().mapToLong(String::length).sum(), cache.getBytes());
+		cache.forEach((key, value) -> assertEquals(expected.get(key), value));
+		assertEquals(0, cache.getEvictions());
+	}
+
+	@Test
+	void evictsWhatHasNotBeenReadSince() {
+		final TileCache<String> cache = new TileCache<>(10, value -> 1);
+		for (int x = 0; x < 10; ++x)
+			cache.put(x, "tile" + x);
+		assertEquals(10, cache.size());
+
+		// the hand clears every bit on its first sweep, so the next put evicts one of them
+		cache.put(10, "tile10");
+		assertEquals(10, cache.size());
+		assertEquals(1, cache.getEvictions());
+
+		// after which the tiles read since survive the ones that weren't
+		final Set<Long> read = new HashSet<>();
+		for (long x = 0; x <= 10; x += 2) {
+			if (cache.get(x) != null)
+				read.add(x);
+		}
+		for (int x = 11; x < 15; ++x)
+			cache.put(x, "tile" + x);
+		assertEquals(10, cache.size());
+		assertTrue(cache.getBytes() <= 10);
+		for (long x : read)
+			assertNotNull(cache.get(x), "tile" + x + " was read but evicted");
+		for (int x = 11; x < 15; ++x)
+			assertNotNull(cache.get(x));
+		assertNull(cache.get(99));
+		assertEquals(5, cache.getEvictions());
+	}
+
+	@Test
+	void handsEveryEvictedEntryToOnEvict() {
+		final Map<Long, String> evicted = new HashMap<>();
+		final TileCache<String> cache = new TileCache<>(10, value -> value.length(), evicted::put);
+		for (int x = 0; x < 5; ++x)
+			cache.put(x, "t" + x);
+		assertTrue(evicted.isEmpty());
+
+		// heavy enough to push out all but one
+		cache.put(5, "heavy!!!");
+		assertEquals(4, evicted.size());
+		assertEquals(2, cache.size());
+		evicted.forEach((key, value) -> {
+			assertEquals("t" + key, value);
+			assertNull(cache.get(key));
+		});
+	}
+
+	@Test
+	void keysSeparateColumnsRowsAndOctaves() {
+		assertNotEquals(TileCache.key(-256, 0, 256, 160, 1), TileCache.key(0, -160, 256, 160, 1));
+		assertNotEquals(TileCache.key(0, 0, 256, 160, 1), TileCache.key(0, 0, 256, 160, 0.5));
+		assertEquals(TileCache.key(0, 0, 256, 160, 1), TileCache.key(0, 0, 256, 160, 1.5));
+	}
+}
@@ -0,0 +1,102 @@
+package dmk.terrainGenerator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TilePyramidTests {
+	private static final int TILE_SIZE = 32;
+
+	@TempDir
+	Path root;
+
+	@Test
+	void modeKeepsTheMostCommonThenTheFirst() {
+		assertEquals(2, TilePyramid.mode(1, 2, 2, 3));
+		assertEquals(3, TilePyramid.mode(1, 2, 3, 3));
+		assertEquals(1, TilePyramid.mode(1, 2, 2, 1));
+		assertEquals(1, TilePyramid.mode(1, 2, 3, 4));
+	}
+
+	@Test
+	void parentIsItsChildrenDownsampledAndResumeRebuildsOnlyWhatIsMissing() throws IOException {
+		final TerrainGenerator terrainGenerator = new TerrainGenerator(9);
+		final ForkJoinPool pool = new ForkJoinPool(2);
+		new TilePyramid(terrainGenerator, root, -100, 40, 4, TILE_SIZE, 1, EnumSet.noneOf(TerrainGenerator.Layer.class)).build(pool);
+
+		final BufferedImage parent = ImageIO.read(root.resolve("0/0/0.png").toFile());
+		for (int quadrant = 0; quadrant < 4; ++quadrant) {
+			final int dx = quadrant & 1, dy = quadrant >> 1;
+			final BufferedImage child = ImageIO.read(root.resolve(String.format("1/%d/%d.png", dx, dy)).toFile());
+			for (int j = 0; j < TILE_SIZE / 2; ++j) {
+				for (int i = 0; i < TILE_SIZE / 2; ++i) {
+					assertEquals(TilePyramid.mode(child.getRGB(i * 2, j * 2), child.getRGB(i * 2 + 1, j * 2),
+							child.getRGB(i * 2, j * 2 + 1), child.getRGB(i * 2 + 1, j * 2 + 1)),
+							parent.getRGB(dx * TILE_SIZE / 2 + i, dy * TILE_SIZE / 2 + j));
+				}
+			}
+		}
+
+		final long built = Files.getLastModifiedTime(root.resolve("1/0/0.png")).toMillis();
+		Files.delete(root.resolve("1/1/1.png"));
+		Files.delete(root.resolve("0/0/0.png"));
+		new TilePyramid(terrainGenerator, root, -100, 40, 4, TILE_SIZE, 1, EnumSet.noneOf(TerrainGenerator.Layer.class)).build(pool);
+		assertTrue(Files.exists(root.resolve("1/1/1.png")));
+		assertTrue(Files.exists(root.resolve("0/0/0.png")));
+		assertEquals(built, Files.getLastModifiedTime(root.resolve("1/0/0.png")).toMillis());
+	}
+
+	@Test
+	void parentChannelIsTheMeanOfItsChildren() throws IOException {
+		final TerrainGenerator terrainGenerator = new TerrainGenerator(9);
+		new TilePyramid(terrainGenerator, root, -100, 40, 4, TILE_SIZE, 1, EnumSet.of(TerrainGenerator.Layer.ELEVATION))
+				.build(new ForkJoinPool(2));
+
+		final float[] parent = readChannel(root.resolve("0/0/0.elevation.f32"));
+		for (int quadrant = 0; quadrant < 4; ++quadrant) {
+			final int dx = quadrant & 1, dy = quadrant >> 1;
+			final float[] child = readChannel(root.resolve(String.format("1/%d/%d.elevation.f32", dx, dy)));
+			for (int j = 0; j < TILE_SIZE / 2; ++j) {
+				for (int i = 0; i < TILE_SIZE / 2; ++i) {
+					final int childIndex = j * 2 * TILE_SIZE + i * 2;
+					assertEquals((child[childIndex] + child[childIndex + 1] + child[childIndex + TILE_SIZE] + child[childIndex + TILE_SIZE + 1]) / 4,
+							parent[(dy * TILE_SIZE / 2 + j) * TILE_SIZE + dx * TILE_SIZE / 2 + i]);
+				}
+			}
+		}
+	}
+
+	@Test
+	void resumingWithAnotherVariantIsRefused() throws IOException {
+		final TerrainGenerator terrainGenerator = new TerrainGenerator(9);
+		final ForkJoinPool pool = new ForkJoinPool(2);
+		new TilePyramid(terrainGenerator, root, -100, 40, 4, TILE_SIZE, 0, EnumSet.noneOf(TerrainGenerator.Layer.class)).build(pool);
+
+		terrainGenerator.setErrorBound(TerrainGenerator.Layer.ELEVATION, terrainGenerator.getErrorBound(TerrainGenerator.Layer.ELEVATION) / 2);
+		assertThrows(IOException.class, () -> new TilePyramid(terrainGenerator, root, -100, 40, 4, TILE_SIZE, 0,
+				EnumSet.noneOf(TerrainGenerator.Layer.class)).build(pool));
+	}
+
+	private static float[] readChannel(Path path) throws IOException {
+		final float[] raster = new float[TILE_SIZE * TILE_SIZE];
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+			for (int i = 0; i < raster.length; ++i)
+				raster[i] = in.readFloat();
+		}
+		return raster;
+	}
+}
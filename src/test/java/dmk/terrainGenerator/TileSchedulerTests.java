@@ -0,0 +1,80 @@
+package dmk.terrainGenerator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+class TileSchedulerTests {
+	@Test
+	void nearestFirstAndStaleTilesCancelled() throws Exception {
+		final TileScheduler scheduler = new TileScheduler(1);
+		final CountDownLatch started = new CountDownLatch(1);
+		final AtomicBoolean sawCancel = new AtomicBoolean();
+		final CountDownLatch done = new CountDownLatch(5);
+
+		// holds the only thread until a new generation leaves it behind
+		scheduler.schedule(0, 0, List.of(new TileScheduler.Task(99, 0, 0, cancelled -> {
+			started.countDown();
+			while (!cancelled.getAsBoolean())
+				Thread.onSpinWait();
+			sawCancel.set(true);
+			done.countDown();
+		})));
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+
+		final List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+		final List<TileScheduler.Task> tasks = new ArrayList<>();
+		for (int x : new int[] {300, 100, 400, 200}) {
+			tasks.add(new TileScheduler.Task(x, x, 0, cancelled -> {
+				assertFalse(cancelled.getAsBoolean());
+				order.add(x);
+				done.countDown();
+			}));
+		}
+		scheduler.schedule(0, 0, tasks);
+
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertTrue(sawCancel.get());
+		assertEquals(List.of(100, 200, 300, 400), order);
+	}
+
+	@Test
+	void runningTileCarriesOver() throws Exception {
+		final TileScheduler scheduler = new TileScheduler(1);
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch rescheduled = new CountDownLatch(1);
+		final AtomicBoolean cancelledAtEnd = new AtomicBoolean(true);
+		final CountDownLatch done = new CountDownLatch(1);
+
+		scheduler.schedule(0, 0, List.of(new TileScheduler.Task(7, 0, 0, cancelled -> {
+			started.countDown();
+			try {
+				rescheduled.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			cancelledAtEnd.set(cancelled.getAsBoolean());
+			done.countDown();
+		})));
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+
+		// the same tile again doesn't cancel the render already under way, or queue a second one
+		scheduler.schedule(50, 50, List.of(new TileScheduler.Task(7, 0, 0, cancelled -> {
+			throw new AssertionError("rendered twice");
+		})));
+		assertEquals(0, scheduler.getQueued());
+		rescheduled.countDown();
+
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertFalse(cancelledAtEnd.get());
+	}
+}
@@ -0,0 +1,229 @@
+package dmk.terrainGenerator;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TileStoreTests {
+	private static final int WIDTH = 160;
+	private static final int HEIGHT = 120;
+	private static final long UNLIMITED = Long.MAX_VALUE;
+
+	@TempDir
+	Path root;
+
+	@Test
+	void tilesSurviveReopeningAndKeepToTheirKeys() throws IOException {
+		Random random = new Random(9);
+		// either side of a region boundary, and either side of 0
+		final int[][] positions = {{0, 0}, {-WIDTH, -HEIGHT}, {15 * WIDTH, 0}, {16 * WIDTH, 17 * HEIGHT}, {-17 * WIDTH, 3 * HEIGHT}};
+		final BufferedImage[] tiles = new BufferedImage[positions.length];
+
+		try (TileStore store = new TileStore(root, UNLIMITED)) {
+			for (int t = 0; t < positions.length; ++t) {
+				tiles[t] = image(random.ints(WIDTH * HEIGHT, 0, 0x1000000).toArray());
+				store.put(key(1, 7, positions[t]), tiles[t]);
+			}
+		}
+
+		try (TileStore store = new TileStore(root, UNLIMITED)) {
+			for (int t = 0; t < positions.length; ++t)
+				assertTile(tiles[t], store.get(key(1, 7, positions[t])));
+
+			assertNull(store.get(key(1, 7, new int[] {WIDTH, 0})));
+			assertNull(store.get(key(2, 7, positions[0])));
+			assertNull(store.get(key(1, 8, positions[0])));
+		}
+	}
+
+	@Test
+	void twoStoresShareARegion() throws IOException, InterruptedException, ExecutionException {
+		final BufferedImage[] tiles = new Random(9).ints(8, 0, 0x1000000).mapToObj(colour -> tile(colour)).toArray(BufferedImage[]::new);
+		final ExecutorService threads = Executors.newFixedThreadPool(2);
+		try (TileStore first = new TileStore(root, UNLIMITED); TileStore second = new TileStore(root, UNLIMITED)) {
+			// each writes half the tiles of one region while reading back the other's
+			final List<Future<?>> writers = new ArrayList<>();
+			for (TileStore store : new TileStore[] {first, second}) {
+				final int half = store == first ? 0 : 1;
+				writers.add(threads.submit(() -> {
+					for (int t = half; t < tiles.length; t += 2) {
+						store.put(key(1, 7, new int[] {t * WIDTH, 0}), tiles[t]);
+						store.get(key(1, 7, new int[] {(t ^ 1) * WIDTH, 0}));
+					}
+					return null;
+				}));
+			}
+			for (Future<?> writer : writers)
+				writer.get();
+
+			for (int t = 0; t < tiles.length; ++t) {
+				assertTile(tiles[t], first.get(key(1, 7, new int[] {t * WIDTH, 0})));
+				assertTile(tiles[t], second.get(key(1, 7, new int[] {t * WIDTH, 0})));
+			}
+		} finally {
+			threads.shutdown();
+		}
+	}
+
+	@Test
+	void anotherProcessSeesTilesPutIntoAnOpenRegion() throws IOException, InterruptedException {
+		try (TileStore store = new TileStore(root, UNLIMITED)) {
+			store.put(key(1, 7, new int[] {0, 0}), tile(1));
+
+			final Process writer = new ProcessBuilder(Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+					"-cp", System.getProperty("java.class.path"), Writer.class.getName(), root.toString())
+					.redirectErrorStream(true).redirectOutput(new File(root.toFile(), "writer.log")).start();
+			assertEquals(0, writer.waitFor(), () -> read(root.resolve("writer.log")));
+
+			assertTile(tile(1), store.get(key(1, 7, new int[] {0, 0})));
+			assertTile(tile(2), store.get(key(1, 7, new int[] {WIDTH, 0})));
+		}
+	}
+
+	/**
+	 * Puts a tile next to the one the test put, from a process of its own.
+	 */
+	static class Writer {
+		public static void main(String[] args) throws IOException {
+			try (TileStore store = new TileStore(Paths.get(args[0]), UNLIMITED)) {
+				if (store.get(key(1, 7, new int[] {0, 0})) == null)
+					System.exit(1);
+				store.put(key(1, 7, new int[] {WIDTH, 0}), tile(2));
+			}
+		}
+	}
+
+	@Test
+	void openingPrunesTheLeastRecentlyUsedRegionsToTheBudget() throws IOException {
+		final int[][] positions = {{0, 0}, {16 * WIDTH, 0}, {32 * WIDTH, 0}};
+		try (TileStore store = new TileStore(root, UNLIMITED)) {
+			for (int t = 0; t < positions.length; ++t)
+				store.put(key(1, 7, positions[t]), tile(t));
+			// and a region in another group
+			store.put(key(2, 7, positions[0]), tile(3));
+		}
+		final long regionBytes = Files.size(region(1, 0));
+		// oldest first: the other group's region, then the positions in order
+		Files.setLastModifiedTime(region(2, 0), FileTime.fromMillis(1000));
+		for (int t = 0; t < positions.length; ++t)
+			Files.setLastModifiedTime(region(1, positions[t][0] / WIDTH / 16), FileTime.fromMillis(2000 + t * 1000));
+
+		try (TileStore store = new TileStore(root, regionBytes * 2)) {
+			assertEquals(2, regions().size());
+			assertNull(store.get(key(2, 7, positions[0])));
+			assertNull(store.get(key(1, 7, positions[0])));
+			assertTile(tile(1), store.get(key(1, 7, positions[1])));
+			assertTile(tile(2), store.get(key(1, 7, positions[2])));
+
+			// a new region makes room for itself
+			store.put(key(1, 7, new int[] {48 * WIDTH, 0}), tile(4));
+			assertEquals(2, regions().size());
+			assertNull(store.get(key(1, 7, positions[1])));
+		}
+	}
+
+	@Test
+	void indexedTilesKeepTheirLandIdsAndPaletteInAQuarterOfTheSpace() throws IOException {
+		final int[] colours = {0x0000ff, 0xc2b280, 0x2d6512, 0xff2000};
+		final IndexColorModel palette = new IndexColorModel(8, colours.length, colours, 0, false, -1, DataBuffer.TYPE_BYTE);
+		final BufferedImage indexed = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_BYTE_INDEXED, palette);
+		final byte[] lands = ((DataBufferByte)indexed.getRaster().getDataBuffer()).getData();
+		final Random random = new Random(9);
+		for (int i = 0; i < lands.length; ++i)
+			lands[i] = (byte)random.nextInt(colours.length);
+
+		try (TileStore store = new TileStore(root, UNLIMITED)) {
+			store.put(key(1, 7, new int[] {0, 0}), indexed);
+			store.put(key(1, 8, new int[] {0, 0}), tile(1));
+			// an indexed region has no room for RGB pixels
+			store.put(key(1, 7, new int[] {WIDTH, 0}), tile(2));
+		}
+
+		try (TileStore store = new TileStore(root, UNLIMITED)) {
+			final BufferedImage stored = store.get(key(1, 7, new int[] {0, 0}));
+			assertEquals(BufferedImage.TYPE_BYTE_INDEXED, stored.getType());
+			assertArrayEquals(lands, ((DataBufferByte)stored.getRaster().getDataBuffer()).getData());
+			final int[] storedColours = new int[colours.length];
+			((IndexColorModel)stored.getColorModel()).getRGBs(storedColours);
+			for (int i = 0; i < colours.length; ++i)
+				assertEquals(colours[i], storedColours[i] & 0xffffff);
+			assertNull(store.get(key(1, 7, new int[] {WIDTH, 0})));
+		}
+
+		final Path indexedRegion = regions().stream().filter(region -> region.getParent().getFileName().toString().contains("_0000000000000007_"))
+				.findAny().get();
+		final Path rgbRegion = regions().stream().filter(region -> region.getParent().getFileName().toString().contains("_0000000000000008_"))
+				.findAny().get();
+		assertTrue(Files.size(indexedRegion) * 3 < Files.size(rgbRegion));
+	}
+
+	private List<Path> regions() throws IOException {
+		try (Stream<Path> found = Files.find(root, 2, (path, attributes) -> path.toString().endsWith(".tiles"))) {
+			return found.collect(Collectors.toList());
+		}
+	}
+
+	/**
+	 * The file of the region regionX along the top row, with variant 7 and seed.
+	 */
+	private Path region(int seed, int regionX) throws IOException {
+		final String name = String.format("r.%d.0.tiles", regionX);
+		return regions().stream()
+				.filter(region -> region.getParent().getFileName().toString().startsWith(seed + "_") && region.getFileName().toString().equals(name))
+				.findAny().get();
+	}
+
+	private static BufferedImage tile(int colour) {
+		final int[] pixels = new int[WIDTH * HEIGHT];
+		Arrays.fill(pixels, colour);
+		return image(pixels);
+	}
+
+	private static BufferedImage image(int[] pixels) {
+		final BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+		System.arraycopy(pixels, 0, ((DataBufferInt)image.getRaster().getDataBuffer()).getData(), 0, pixels.length);
+		return image;
+	}
+
+	private static void assertTile(BufferedImage expected, BufferedImage actual) {
+		assertArrayEquals(TerrainGenerator.rgb(expected), TerrainGenerator.rgb(actual));
+	}
+
+	private static String read(Path path) {
+		try {
+			return new String(Files.readAllBytes(path));
+		} catch (IOException e) {
+			return e.toString();
+		}
+	}
+
+	private static TileStore.Key key(int seed, long variant, int[] position) {
+		return new TileStore.Key(seed, 2, variant, position[0], position[1], WIDTH, HEIGHT);
+	}
+}